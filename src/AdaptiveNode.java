@@ -0,0 +1,166 @@
+/*
+ * Represents either the root of the tree or an internal branch point, sized to
+ * its number of children, like the nodes of an adaptive radix tree.
+ *
+ * Most internal nodes have two or three children, so a node starts with
+ * parallel arrays of SMALL keys and edges, sorted by key and searched linearly.
+ * They double as children are added, and are searched by binary search beyond
+ * SMALL. Beyond TABLE_AFTER children, if every key is below 256, the node
+ * switches to a table indexed directly by the character, as CharNode does for
+ * 'a'..'z'. Any char can be a key at every stage, and getAllEdges is always in
+ * key order.
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AdaptiveNode implements Node {
+    static final int SMALL = 4;
+    static final int TABLE_AFTER = 16;
+    static final int TABLE_SIZE = 256;
+
+    private boolean isRoot;
+    private Node suffixLink;
+
+    /*
+     * keys[0..size) in ascending order, and their edges. Unused once table is
+     * set.
+     */
+    private char[] keys;
+    private Edge[] edges;
+    private int size;
+
+    private Edge[] table;
+
+    public AdaptiveNode() {
+        keys = new char[SMALL];
+        edges = new Edge[SMALL];
+    }
+
+    public Edge getEdge(char c) {
+        if (table != null) {
+            return c < TABLE_SIZE ? table[c] : null;
+        }
+
+        int k = indexOf(c);
+        return k >= 0 ? edges[k] : null;
+    }
+
+    /*
+     * The index of c in keys, or -(insertion point) - 1 as Arrays.binarySearch.
+     */
+    private int indexOf(char c) {
+        if (size > SMALL) {
+            return Arrays.binarySearch(keys, 0, size, c);
+        }
+
+        int k = 0;
+        while (k < size && keys[k] < c) {
+            k++;
+        }
+        return k < size && keys[k] == c ? k : -k - 1;
+    }
+
+    public boolean setEdge(char c, Edge edge) {
+        if (table != null) {
+            if (c < TABLE_SIZE) {
+                if (table[c] == null) {
+                    size++;
+                }
+                table[c] = edge;
+                return true;
+            }
+            fromTable();
+        }
+
+        int k = indexOf(c);
+        if (k >= 0) {
+            edges[k] = edge;
+            return true;
+        }
+
+        if (size == keys.length) {
+            if (size >= TABLE_AFTER && keys[size - 1] < TABLE_SIZE && c < TABLE_SIZE) {
+                toTable();
+                return setEdge(c, edge);
+            }
+            keys = Arrays.copyOf(keys, size * 2);
+            edges = Arrays.copyOf(edges, size * 2);
+        }
+
+        int at = -k - 1;
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(edges, at, edges, at + 1, size - at);
+        keys[at] = c;
+        edges[at] = edge;
+        size++;
+        return true;
+    }
+
+    private void toTable() {
+        table = new Edge[TABLE_SIZE];
+        for (int k = 0; k < size; k++) {
+            table[keys[k]] = edges[k];
+        }
+        keys = null;
+        edges = null;
+    }
+
+    /*
+     * Back to sorted arrays, for a key the table cannot hold.
+     */
+    private void fromTable() {
+        keys = new char[size * 2];
+        edges = new Edge[size * 2];
+
+        int k = 0;
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            if (table[c] != null) {
+                keys[k] = (char) c;
+                edges[k] = table[c];
+                k++;
+            }
+        }
+        table = null;
+    }
+
+    /*
+     * A copy in every state, as MapNode gives, so callers cannot reach the
+     * node's arrays.
+     */
+    public List<Edge> getAllEdges() {
+        if (table != null) {
+            List<Edge> all = new ArrayList<>(size);
+            for (Edge e : table) {
+                if (e != null) {
+                    all.add(e);
+                }
+            }
+            return all;
+        }
+
+        List<Edge> all = new ArrayList<>(size);
+        for (int k = 0; k < size; k++) {
+            all.add(edges[k]);
+        }
+        return all;
+    }
+
+    public boolean getIsRoot() {
+        return isRoot;
+    }
+
+    public boolean setIsRoot(boolean isTrue) {
+        isRoot = isTrue;
+        return true;
+    }
+
+    public Node getSuffixLink() {
+        return suffixLink;
+    }
+
+    public boolean setSuffixLink(Node node) {
+        suffixLink = node;
+        return true;
+    }
+}
@@ -0,0 +1,5 @@
+public class AdaptiveNodeFactory implements NodeFactory {
+    public Node createNode() {
+        return new AdaptiveNode();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Maps the symbols of an input to dense ranks 0..size-1, so that a node can hold
+ * its children in an array of size slots (see AlphabetNode) whatever the
+ * characters are: bytes, uppercase, digits, terminators.
+ *
+ * The rank of a symbol is its position in the order the alphabet was given,
+ * which is also the order of AlphabetNode.getAllEdges.
+ */
+import java.util.Arrays;
+
+public class Alphabet {
+    private final char[] symbols;
+
+    /*
+     * ranks[c] for every c up to the largest symbol, -1 where c is not a symbol.
+     */
+    private final int[] ranks;
+
+    private Alphabet(char[] symbols) {
+        this.symbols = symbols;
+
+        char max = 0;
+        for (char c : symbols) {
+            max = (char) Math.max(max, c);
+        }
+        ranks = new int[max + 1];
+        Arrays.fill(ranks, -1);
+        for (int k = 0; k < symbols.length; k++) {
+            ranks[symbols[k]] = k;
+        }
+    }
+
+    /*
+     * The given symbols, ranked in that order. Repeats are ignored.
+     */
+    public static Alphabet of(CharSequence symbols) {
+        char[] distinct = new char[symbols.length()];
+        int size = 0;
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        for (int i = 0; i < symbols.length(); i++) {
+            char c = symbols.charAt(i);
+            if (!seen[c]) {
+                seen[c] = true;
+                distinct[size++] = c;
+            }
+        }
+        return new Alphabet(Arrays.copyOf(distinct, size));
+    }
+
+    /*
+     * The characters that occur in text, ranked by char value.
+     */
+    public static Alphabet ofText(CharSequence text) {
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        int size = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!seen[c]) {
+                seen[c] = true;
+                size++;
+            }
+        }
+
+        char[] symbols = new char[size];
+        int k = 0;
+        for (int c = 0; c < seen.length; c++) {
+            if (seen[c]) {
+                symbols[k++] = (char) c;
+            }
+        }
+        return new Alphabet(symbols);
+    }
+
+    /*
+     * Every byte value, as read by ByteText and MappedText.
+     */
+    public static Alphabet bytes() {
+        char[] symbols = new char[256];
+        for (int c = 0; c < symbols.length; c++) {
+            symbols[c] = (char) c;
+        }
+        return new Alphabet(symbols);
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    /*
+     * The rank of c, or -1 if c is not in the alphabet.
+     */
+    public int rank(char c) {
+        return c < ranks.length ? ranks[c] : -1;
+    }
+
+    public char symbol(int rank) {
+        return symbols[rank];
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Represents either the root of the tree or an internal branch point, with one
+ * slot per symbol of an Alphabet.
+ *
+ * This is CharNode for any input: lookups index an array by the rank of the
+ * character, so they take constant time, and the alphabet decides which
+ * characters have slots. Looking up a character outside the alphabet finds
+ * nothing; adding one is an error.
+ */
+import java.util.ArrayList;
+import java.util.List;
+
+public class AlphabetNode implements Node {
+    private boolean isRoot;
+    private Node suffixLink;
+
+    private final Alphabet alphabet;
+    private final Edge[] edges;
+
+    public AlphabetNode(Alphabet alphabet) {
+        this.alphabet = alphabet;
+        edges = new Edge[alphabet.size()];
+    }
+
+    public Edge getEdge(char c) {
+        int k = alphabet.rank(c);
+        return k >= 0 ? edges[k] : null;
+    }
+
+    public boolean setEdge(char c, Edge edge) {
+        int k = alphabet.rank(c);
+        if (k < 0) {
+            throw new IllegalArgumentException("Character " + (int) c + " is not in the alphabet.");
+        }
+        edges[k] = edge;
+        return true;
+    }
+
+    /*
+     * The edges set, in rank order, copied so that later changes to the node do
+     * not show through, as for the other node types.
+     */
+    public List<Edge> getAllEdges() {
+        List<Edge> all = new ArrayList<>();
+        for (Edge e : edges) {
+            if (e != null) {
+                all.add(e);
+            }
+        }
+        return all;
+    }
+
+    public boolean getIsRoot() {
+        return isRoot;
+    }
+
+    public boolean setIsRoot(boolean isTrue) {
+        isRoot = isTrue;
+        return true;
+    }
+
+    public Node getSuffixLink() {
+        return suffixLink;
+    }
+
+    public boolean setSuffixLink(Node node) {
+        suffixLink = node;
+        return true;
+    }
+}
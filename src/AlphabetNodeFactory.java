@@ -0,0 +1,18 @@
+public class AlphabetNodeFactory implements NodeFactory {
+    private final Alphabet alphabet;
+
+    public AlphabetNodeFactory(Alphabet alphabet) {
+        this.alphabet = alphabet;
+    }
+
+    /*
+     * A factory for the characters of text, for building a tree over it.
+     */
+    public static AlphabetNodeFactory of(CharSequence text) {
+        return new AlphabetNodeFactory(Alphabet.ofText(text));
+    }
+
+    public Node createNode() {
+        return new AlphabetNode(alphabet);
+    }
+}
@@ -15,6 +15,16 @@ public class App {
                 Arrays.copyOfRange(Test.strings, 0, Test.strings.length - 1),
                 Arrays.copyOfRange(Test.tests, 0, Test.tests.length - 1));
         Test.testTreeStructures(new MapNodeFactory(), results, Test.strings, Test.tests);
+        /*
+         * Array nodes over an alphabet cover the terminators of gst1 too. The
+         * expected trees list siblings in the order a, b, c, '#', '$', d, ..., z.
+         */
+        Test.testTreeStructures(new AlphabetNodeFactory(Alphabet.of("abc#$defghijklmnopqrstuvwxyz")), results,
+                Test.strings, Test.tests);
+        // The expected gst1 tree lists '#' and '$' in HashMap order, see testAdaptiveNode.
+        Test.testTreeStructures(new AdaptiveNodeFactory(), results,
+                Arrays.copyOfRange(Test.strings, 0, Test.strings.length - 1),
+                Arrays.copyOfRange(Test.tests, 0, Test.tests.length - 1));
 
         /*
          * Confirms suffix link traversal during extensions of branch points.
@@ -43,6 +53,58 @@ public class App {
         Test.testSuffixLinkCreationAndTraversal(new CharNodeFactory(), results);
         Test.testSuffixLinkCreationAndTraversal(new MapNodeFactory(), results);
 
+        /*
+         * Confirms the int array representation builds the same trees.
+         */
+        Test.testArenaTree(results);
+
+        /*
+         * Confirms the DNA node and 2-bit text build the same trees.
+         */
+        Test.testDna(results);
+
+        /*
+         * Confirms substring lookups, including ones that end inside an edge.
+         */
+        Test.testContains(results);
+
+        /*
+         * Confirms occurrence counts and positions from the annotated tree.
+         */
+        Test.testCountAndLocate(results);
+
+        /*
+         * Confirms document queries on a generalized tree as documents are added.
+         */
+        Test.testGeneralizedSuffixTree(results);
+        Test.testGeneralizedFactories(results);
+
+        /*
+         * Confirms queries between appends, and that appending builds the same tree.
+         */
+        Test.testOnlineBuilder(results);
+
+        /*
+         * Confirms trees over byte arrays and memory-mapped files.
+         */
+        Test.testTextSources(results);
+        Test.testSuffixTreeFile(results);
+        Test.testSubstrings(results);
+        Test.testParallelBuilder(results);
+        Test.testSuffixArray(results);
+        Test.testQueryEngine(results);
+        Test.testSuffixWalker(results);
+        Test.testBuildMetrics(results);
+        Test.testAdaptiveNode(results);
+        Test.testAlphabetNode(results);
+        Test.testSlidingWindow(results);
+        Test.testMatchingStatistics(results);
+        Test.testApproximateMatcher(results);
+        Test.testFrozenSuffixTree(results);
+        Test.testQueryCache(results);
+        Test.testOffHeapStore(results);
+        Test.testRepeats(results);
+
         /*
          * Do all tests pass?
          */
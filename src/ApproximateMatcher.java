@@ -0,0 +1,379 @@
+/*
+ * Finds where a pattern occurs with at most k mismatches (Hamming distance) or
+ * k edits (Levenshtein distance).
+ *
+ * The search walks the tree depth first, one text character at a time, comparing
+ * in place against the text. It carries the distance of the pattern to the path
+ * so far: a mismatch count, or one dynamic programming row per depth for edits,
+ * of which only the band within k of the diagonal is computed. A path is
+ * abandoned as soon as no extension of it can come within k, so the walk only
+ * touches the part of the tree near the pattern, not every variant of it.
+ * Where the walk stops, every leaf below is an occurrence starting at that
+ * leaf's suffix, at the best distance seen on the path.
+ *
+ * For edits, an occurrence at p is any substring starting at p within k edits
+ * of the pattern, and its distance is the smallest such. The paths are at most
+ * pattern length + k deep.
+ *
+ * The text must end with a unique terminator, as for Util.annotate, so every
+ * suffix has a leaf, and other texts are rejected. The terminator is never
+ * matched, not even as a mismatch.
+ * Generalized trees have their own overloads, which also report the suffixes
+ * that end on a node (see getTerminals).
+ *
+ * Given a pool, the subtrees of the first FORK_LEVELS levels are searched as
+ * separate tasks, each with its own copy of the rows, which pays off when k is
+ * large enough for the search to spread across most of the tree.
+ */
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ApproximateMatcher {
+    public enum Distance {
+        HAMMING, EDIT
+    }
+
+    /*
+     * Levels of nodes below the root whose children are forked.
+     */
+    static final int FORK_LEVELS = 2;
+
+    /*
+     * The occurrences, by increasing position, with the distance of each.
+     */
+    public static class Matches {
+        public final int[] positions;
+        public final int[] distances;
+
+        Matches(int[] positions, int[] distances) {
+            this.positions = positions;
+            this.distances = distances;
+        }
+
+        public int size() {
+            return positions.length;
+        }
+    }
+
+    public static Matches search(Node root, CharSequence s, CharSequence pattern, int k, Distance distance) {
+        return search(root, s, pattern, k, distance, null);
+    }
+
+    public static Matches search(Node root, CharSequence s, CharSequence pattern, int k, Distance distance,
+            ForkJoinPool pool) {
+        return search(root, s, null, pattern, k, distance, pool);
+    }
+
+    public static Matches search(GeneralizedSuffixTree tree, CharSequence pattern, int k, Distance distance) {
+        return search(tree, pattern, k, distance, null);
+    }
+
+    public static Matches search(GeneralizedSuffixTree tree, CharSequence pattern, int k, Distance distance,
+            ForkJoinPool pool) {
+        return search(tree.getRoot(), tree.getText(), tree, pattern, k, distance, pool);
+    }
+
+    private static Matches search(Node root, CharSequence s, GeneralizedSuffixTree documents, CharSequence pattern,
+            int k, Distance distance, ForkJoinPool pool) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        if (documents == null && s.length() > 0 && !Util.isTerminated(s)) {
+            throw new IllegalArgumentException("The text must end with a unique terminator.");
+        }
+        if (pattern.length() == 0 || s.length() == 0) {
+            return new Matches(new int[0], new int[0]);
+        }
+
+        Search search = new Search(s, documents, pattern, k, distance);
+        Walk walk = new Walk(search, root, null, 0, search.newRows(), 0, pool != null);
+        Found found = pool == null ? walk.compute() : pool.invoke(walk);
+
+        /*
+         * Each suffix is reached once, so positions are distinct.
+         */
+        long[] packed = Arrays.copyOf(found.packed, found.size);
+        Arrays.sort(packed);
+        int[] positions = new int[packed.length];
+        int[] distances = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            positions[i] = (int) (packed[i] >>> 32);
+            distances[i] = (int) packed[i];
+        }
+        return new Matches(positions, distances);
+    }
+
+    /*
+     * What is fixed for one search, and the distance recurrences.
+     */
+    private static final class Search {
+        final CharSequence s;
+        final GeneralizedSuffixTree documents;
+        final CharSequence pattern;
+        final int m;
+        final int k;
+        final boolean edit;
+        final char terminator;
+
+        Search(CharSequence s, GeneralizedSuffixTree documents, CharSequence pattern, int k, Distance distance) {
+            this.s = s;
+            this.documents = documents;
+            this.pattern = pattern;
+            this.m = pattern.length();
+            this.k = k;
+            this.edit = distance == Distance.EDIT;
+            this.terminator = s.charAt(s.length() - 1);
+        }
+
+        /*
+         * One row per depth. For mismatches a row is the count so far. For edits
+         * rows[d][j] is the distance of the first j pattern characters to the
+         * path of length d, capped at k + 1, and rows[d][m + 1] is the best
+         * rows[e][m] for e up to d.
+         */
+        int[][] newRows() {
+            if (!edit) {
+                return new int[m + 1][1];
+            }
+
+            int[][] rows = new int[m + k + 1][m + 2];
+            for (int j = 0; j <= m; j++) {
+                rows[0][j] = Math.min(j, k + 1);
+            }
+            rows[0][m + 1] = rows[0][m];
+            return rows;
+        }
+
+        /*
+         * Computes the row for depth d + 1 from the text character c, and returns
+         * whether the path may still be extended.
+         */
+        boolean step(int[][] rows, int d, char c) {
+            if (!edit) {
+                int mismatches = rows[d][0] + (pattern.charAt(d) == c ? 0 : 1);
+                rows[d + 1][0] = mismatches;
+                return mismatches <= k && d + 1 < m;
+            }
+
+            int[] previous = rows[d];
+            int[] row = rows[d + 1];
+            int cap = k + 1;
+
+            int from = Math.max(1, d + 1 - k);
+            int to = Math.min(m, d + 1 + k);
+            row[from - 1] = from == 1 ? Math.min(d + 1, cap) : cap;
+            if (to < m) {
+                row[to + 1] = cap;
+            }
+
+            int least = row[from - 1];
+            for (int j = from; j <= to; j++) {
+                int substitution = previous[j - 1] + (pattern.charAt(j - 1) == c ? 0 : 1);
+                int value = Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1);
+                row[j] = Math.min(value, cap);
+                least = Math.min(least, row[j]);
+            }
+
+            row[m + 1] = Math.min(previous[m + 1], to == m ? row[m] : cap);
+            return least <= k && d + 1 < m + k;
+        }
+
+        /*
+         * The distance of an occurrence whose path stops at depth d, or more
+         * than k if there is none.
+         */
+        int result(int[][] rows, int d) {
+            if (d == 0) {
+                return k + 1;
+            }
+            if (!edit) {
+                return d == m ? rows[d][0] : k + 1;
+            }
+            return rows[d][m + 1];
+        }
+    }
+
+    /*
+     * Occurrences as position << 32 | distance.
+     */
+    private static final class Found {
+        long[] packed = new long[16];
+        int size;
+
+        void add(int position, int distance) {
+            if (size == packed.length) {
+                packed = Arrays.copyOf(packed, size * 2);
+            }
+            packed[size++] = (long) position << 32 | distance;
+        }
+
+        void addAll(Found other) {
+            if (size + other.size > packed.length) {
+                packed = Arrays.copyOf(packed, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.packed, 0, packed, size, other.size);
+            size += other.size;
+        }
+    }
+
+    /*
+     * Searches below an edge, or below the root when edge is null.
+     */
+    private static final class Walk extends RecursiveTask<Found> {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final Node node;
+        private final Edge edge;
+        private final int depth;
+        private final int[][] rows;
+        private final int level;
+        private final boolean parallel;
+        private final Found found = new Found();
+
+        /*
+         * The stack for reporting a subtree, kept between reports.
+         */
+        private Node[] nodes = new Node[16];
+        private int[] depths = new int[16];
+
+        Walk(Search search, Node node, Edge edge, int depth, int[][] rows, int level, boolean parallel) {
+            this.search = search;
+            this.node = node;
+            this.edge = edge;
+            this.depth = depth;
+            this.rows = rows;
+            this.level = level;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected Found compute() {
+            if (edge == null) {
+                visit(node, depth, level);
+            } else {
+                follow(edge, depth, level);
+            }
+            return found;
+        }
+
+        private void visit(Node node, int depth, int level) {
+            Walk[] tasks = null;
+            int forked = 0;
+
+            addTerminals(node, search.result(rows, depth));
+
+            for (Edge e : node.getAllEdges()) {
+                if (e == null) {
+                    continue;
+                }
+
+                if (parallel && level < FORK_LEVELS && e.child != null) {
+                    if (tasks == null) {
+                        tasks = new Walk[node.getAllEdges().size()];
+                    }
+                    int[][] copy = search.newRows();
+                    for (int d = 0; d <= depth; d++) {
+                        System.arraycopy(rows[d], 0, copy[d], 0, rows[d].length);
+                    }
+                    tasks[forked] = new Walk(search, null, e, depth, copy, level, true);
+                    tasks[forked++].fork();
+                } else {
+                    follow(e, depth, level);
+                }
+            }
+
+            for (int t = forked - 1; t >= 0; t--) {
+                found.addAll(tasks[t].join());
+            }
+        }
+
+        /*
+         * Extends the path along e, from its parent at the given depth.
+         */
+        private void follow(Edge e, int parentDepth, int level) {
+            CharSequence s = search.s;
+            int end = e.getEnd(s.length());
+            int d = parentDepth;
+
+            for (int j = e.start; j < end; j++) {
+                char c = s.charAt(j);
+                if (c == search.terminator) {
+                    report(e, parentDepth, search.result(rows, d));
+                    return;
+                }
+
+                boolean extend = search.step(rows, d, c);
+                d++;
+                if (!extend) {
+                    report(e, parentDepth, search.result(rows, d));
+                    return;
+                }
+            }
+
+            if (e.child == null) {
+                report(e, parentDepth, search.result(rows, d));
+            } else {
+                visit(e.child, d, level + 1);
+            }
+        }
+
+        /*
+         * Adds every suffix below e at the given distance, if it is within k.
+         */
+        private void report(Edge e, int parentDepth, int distance) {
+            if (distance > search.k) {
+                return;
+            }
+            addTerminals(e.child, distance);
+            if (e.child == null) {
+                found.add(e.start - parentDepth, distance);
+                return;
+            }
+
+            int length = search.s.length();
+            int size = 0;
+            nodes[size] = e.child;
+            depths[size] = parentDepth + e.getEnd(length) - e.start;
+            size++;
+
+            while (size > 0) {
+                size--;
+                Node top = nodes[size];
+                int topDepth = depths[size];
+
+                for (Edge child : top.getAllEdges()) {
+                    if (child == null) {
+                        continue;
+                    }
+                    if (child.child == null) {
+                        found.add(child.start - topDepth, distance);
+                        continue;
+                    }
+                    addTerminals(child.child, distance);
+
+                    if (size == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, size * 2);
+                        depths = Arrays.copyOf(depths, size * 2);
+                    }
+                    nodes[size] = child.child;
+                    depths[size] = topDepth + child.getEnd(length) - child.start;
+                    size++;
+                }
+            }
+        }
+
+        /*
+         * Adds the suffixes of a generalized tree that end on the node.
+         */
+        private void addTerminals(Node node, int distance) {
+            if (search.documents == null || node == null || distance > search.k) {
+                return;
+            }
+            for (int suffix : search.documents.getTerminals(node)) {
+                found.add(suffix, distance);
+            }
+        }
+    }
+}
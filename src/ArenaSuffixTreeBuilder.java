@@ -0,0 +1,143 @@
+/*
+ * Ukkonen's Algorithm over an ArenaTree.
+ *
+ * This follows SuffixTreeBuilder step for step (see the comments there), but nodes,
+ * edges and ends are int ids into the arena instead of heap objects, so building
+ * a tree allocates a handful of arrays rather than several objects per character.
+ *
+ * The one structural difference is the split: the id of the existing edge stays
+ * with the lower half, because suffix links address the node below an edge by
+ * that id. The new internal node takes the place of the edge in its parent.
+ */
+public class ArenaSuffixTreeBuilder {
+    public static ArenaTree build(CharSequence s) {
+        return build(s, null);
+    }
+
+    /*
+     * Builds the tree in the pages of store, off the heap, or on the heap if store
+     * is null. The store must stay open while the tree is used.
+     */
+    public static ArenaTree build(CharSequence s, OffHeapStore store) {
+        /*
+         * At most one leaf and one internal node per character, plus the root.
+         */
+        ArenaTree tree = new ArenaTree(2 * s.length() + 1, store);
+
+        int root = ArenaTree.ROOT;
+        int peg = 0;
+
+        int currentNode = root;
+        int currentEdge = ArenaTree.NONE;
+
+        int counter = 0;
+
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+
+            /*
+             * Case 1. No active edge.
+             */
+            if (currentEdge == ArenaTree.NONE) {
+                int edge = tree.getChild(currentNode, c, s);
+
+                if (edge == ArenaTree.NONE) {
+                    tree.addChild(currentNode, tree.newId(i, ArenaTree.OPEN_END));
+                    peg++;
+                } else {
+                    currentEdge = edge;
+                    counter++;
+                }
+
+                i++;
+            }
+            /*
+             * Case 2. Traversing an edge, and the next character differs.
+             */
+            else if (c != s.charAt(tree.getStart(currentEdge) + counter)) {
+                int lastCreatedInternalNode = ArenaTree.NONE;
+                boolean resetEdgeAndCounter = true;
+
+                while (peg < i) {
+                    /*
+                     * Skip-jump down from the root when the suffix link traversal
+                     * returned there.
+                     */
+                    if (currentNode == root) {
+                        counter = i - peg;
+                    }
+
+                    currentEdge = tree.getChild(currentNode, s.charAt(i - counter), s);
+
+                    while (counter > (tree.getRawEnd(currentEdge) - tree.getStart(currentEdge))) {
+                        counter -= tree.getRawEnd(currentEdge) - tree.getStart(currentEdge);
+
+                        currentNode = currentEdge;
+                        currentEdge = tree.getChild(currentNode, s.charAt(i - counter), s);
+                    }
+
+                    boolean atEndOfInternalEdge = tree.getStart(currentEdge) + counter == tree.getRawEnd(currentEdge)
+                            && tree.getRawEnd(currentEdge) != ArenaTree.OPEN_END;
+
+                    if (atEndOfInternalEdge && tree.getChild(currentEdge, c, s) != ArenaTree.NONE) {
+                        resetEdgeAndCounter = false;
+
+                        currentNode = currentEdge;
+                        currentEdge = tree.getChild(currentNode, c, s);
+                        counter = 1;
+                        i++;
+                        break;
+                    } else if (atEndOfInternalEdge) {
+                        tree.addChild(currentEdge, tree.newId(i, ArenaTree.OPEN_END));
+                    }
+                    /*
+                     * Create the new branch point. The lower half keeps the id of the
+                     * current edge, so its children and suffix link stay in place.
+                     */
+                    else {
+                        int splitAt = tree.getStart(currentEdge) + counter;
+                        int internalNode = tree.newId(tree.getStart(currentEdge), splitAt);
+
+                        tree.replaceChild(currentNode, currentEdge, internalNode);
+                        tree.setStart(currentEdge, splitAt);
+
+                        tree.addChild(internalNode, currentEdge);
+                        tree.addChild(internalNode, tree.newId(i, ArenaTree.OPEN_END));
+
+                        if (lastCreatedInternalNode != ArenaTree.NONE) {
+                            tree.setSuffixLink(lastCreatedInternalNode, internalNode);
+                        }
+                        lastCreatedInternalNode = internalNode;
+
+                        if (tree.getSuffixLink(currentNode) == root && currentNode != root) {
+                            lastCreatedInternalNode = ArenaTree.NONE;
+                        }
+                    }
+
+                    /*
+                     * Traverse the suffix link.
+                     */
+                    currentNode = tree.getSuffixLink(currentNode);
+
+                    peg++;
+                }
+
+                if (resetEdgeAndCounter) {
+                    currentEdge = ArenaTree.NONE;
+                    counter = 0;
+                    continue;
+                }
+            }
+            /*
+             * Option 3: Where the characters equal.
+             */
+            else {
+                i++;
+                counter++;
+            }
+        }
+
+        return tree;
+    }
+}
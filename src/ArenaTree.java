@@ -0,0 +1,440 @@
+/*
+ * A suffix tree stored in int columns instead of Node/Edge objects.
+ *
+ * Every node other than the root is entered by exactly one edge, so a single
+ * integer id addresses both the edge and the node below it. Id 0 is the root,
+ * whose edge fields are unused.
+ *
+ * start/end: the substring of the edge entering the id, end is exclusive.
+ * Leaf edges all share the global end, which is encoded as OPEN_END.
+ * firstChild/nextSibling: the children of an id as a singly linked list.
+ * suffixLink: only meaningful for the root and internal nodes.
+ *
+ * The columns are growable int arrays by default (see IntColumn for others), or
+ * pages of an OffHeapStore for trees larger than the heap.
+ */
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public class ArenaTree {
+    public static final int ROOT = 0;
+    public static final int NONE = -1;
+    public static final int OPEN_END = Integer.MAX_VALUE;
+
+    final IntColumn start;
+    final IntColumn end;
+    final IntColumn firstChild;
+    final IntColumn nextSibling;
+    final IntColumn suffixLink;
+
+    /*
+     * The arrays of the columns that are HeapIntColumns, null for the others.
+     * Heap trees read and write these directly: once mapped and off-heap
+     * columns are loaded too, calls through IntColumn turn megamorphic and slow
+     * the build down by up to half.
+     */
+    private int[] starts;
+    private int[] ends;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] suffixLinks;
+
+    int size;
+
+    public ArenaTree(int capacity) {
+        this(capacity, null);
+    }
+
+    /*
+     * An empty tree whose columns live in store, or on the heap if store is null.
+     */
+    public ArenaTree(int capacity, OffHeapStore store) {
+        capacity = Math.max(capacity, 1);
+
+        start = column(capacity, store);
+        end = column(capacity, store);
+        firstChild = column(capacity, store);
+        nextSibling = column(capacity, store);
+        suffixLink = column(capacity, store);
+        cacheArrays();
+
+        int root = newId(0, 0);
+        setSuffixLink(root, root);
+    }
+
+    private static IntColumn column(int capacity, OffHeapStore store) {
+        if (store == null) {
+            return new HeapIntColumn(capacity);
+        }
+        IntColumn column = store.newColumn();
+        column.ensureCapacity(capacity);
+        return column;
+    }
+
+    /*
+     * A tree over existing columns which already hold size ids.
+     */
+    public ArenaTree(IntColumn start, IntColumn end, IntColumn firstChild, IntColumn nextSibling,
+            IntColumn suffixLink, int size) {
+        this.start = start;
+        this.end = end;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.suffixLink = suffixLink;
+        this.size = size;
+        cacheArrays();
+    }
+
+    private void cacheArrays() {
+        starts = arrayOf(start);
+        ends = arrayOf(end);
+        firstChildren = arrayOf(firstChild);
+        nextSiblings = arrayOf(nextSibling);
+        suffixLinks = arrayOf(suffixLink);
+    }
+
+    private static int[] arrayOf(IntColumn column) {
+        return column instanceof HeapIntColumn ? ((HeapIntColumn) column).values() : null;
+    }
+
+    /*
+     * Copies a tree of Node/Edge objects into the arena layout.
+     *
+     * Only leaves are copied as suffixes. The suffixes of a generalized tree that
+     * end on a node (see GeneralizedSuffixTree.getTerminals) have no leaf, so
+     * locate does not report them.
+     */
+    public static ArenaTree of(Node root, CharSequence s) {
+        ArenaTree tree = new ArenaTree(2 * s.length() + 1);
+
+        Map<Node, Integer> ids = new IdentityHashMap<>();
+        ids.put(root, ROOT);
+
+        /*
+         * Breadth first, so every internal node has an id before suffix links are
+         * copied.
+         */
+        Node[] queue = new Node[16];
+        queue[0] = root;
+        int head = 0;
+        int tail = 1;
+
+        while (head < tail) {
+            Node node = queue[head++];
+            int id = ids.get(node);
+
+            for (Edge e : node.getAllEdges()) {
+                if (e == null) {
+                    continue;
+                }
+
+                int child = tree.newId(e.start, e.end == Edge.OPEN_END ? OPEN_END : e.end);
+                tree.addChild(id, child);
+
+                if (e.child != null) {
+                    ids.put(e.child, child);
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                    }
+                    queue[tail++] = e.child;
+                }
+            }
+        }
+
+        for (Map.Entry<Node, Integer> entry : ids.entrySet()) {
+            Node link = entry.getKey().getSuffixLink();
+            tree.setSuffixLink(entry.getValue(), link == null || !ids.containsKey(link) ? ROOT : ids.get(link));
+        }
+
+        return tree;
+    }
+
+    /*
+     * Appends a childless id and returns it.
+     */
+    int newId(int edgeStart, int edgeEnd) {
+        if (size == start.capacity()) {
+            start.ensureCapacity(size + 1);
+            end.ensureCapacity(size + 1);
+            firstChild.ensureCapacity(size + 1);
+            nextSibling.ensureCapacity(size + 1);
+            suffixLink.ensureCapacity(size + 1);
+            cacheArrays();
+        }
+
+        int id = size++;
+        setStart(id, edgeStart);
+        setEnd(id, edgeEnd);
+        setFirstChild(id, NONE);
+        setNextSibling(id, NONE);
+        setSuffixLink(id, ROOT);
+
+        return id;
+    }
+
+    /*
+     * Finds the child of a node whose edge starts with c, or NONE.
+     */
+    public int getChild(int node, char c, CharSequence s) {
+        for (int child = getFirstChild(node); child != NONE; child = getNextSibling(child)) {
+            if (s.charAt(getStart(child)) == c) {
+                return child;
+            }
+        }
+
+        return NONE;
+    }
+
+    void addChild(int node, int child) {
+        setNextSibling(child, getFirstChild(node));
+        setFirstChild(node, child);
+    }
+
+    /*
+     * Puts replacement in the sibling list position of child.
+     */
+    void replaceChild(int node, int child, int replacement) {
+        setNextSibling(replacement, getNextSibling(child));
+        setNextSibling(child, NONE);
+
+        if (getFirstChild(node) == child) {
+            setFirstChild(node, replacement);
+            return;
+        }
+
+        int previous = getFirstChild(node);
+        while (getNextSibling(previous) != child) {
+            previous = getNextSibling(previous);
+        }
+        setNextSibling(previous, replacement);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int id) {
+        int[] values = starts;
+        return values != null ? values[id] : start.get(id);
+    }
+
+    /*
+     * The exclusive end of the edge entering id, resolving the shared leaf end
+     * against the length of the indexed text.
+     */
+    public int getEnd(int id, int length) {
+        int e = getRawEnd(id);
+        return e == OPEN_END ? length : e;
+    }
+
+    /*
+     * The end as stored, OPEN_END for leaves.
+     */
+    int getRawEnd(int id) {
+        int[] values = ends;
+        return values != null ? values[id] : end.get(id);
+    }
+
+    public boolean isLeaf(int id) {
+        return id != ROOT && getFirstChild(id) == NONE;
+    }
+
+    public int getFirstChild(int id) {
+        int[] values = firstChildren;
+        return values != null ? values[id] : firstChild.get(id);
+    }
+
+    public int getNextSibling(int id) {
+        int[] values = nextSiblings;
+        return values != null ? values[id] : nextSibling.get(id);
+    }
+
+    public int getSuffixLink(int id) {
+        int[] values = suffixLinks;
+        return values != null ? values[id] : suffixLink.get(id);
+    }
+
+    void setStart(int id, int value) {
+        if (starts != null) {
+            starts[id] = value;
+        } else {
+            start.set(id, value);
+        }
+    }
+
+    void setEnd(int id, int value) {
+        if (ends != null) {
+            ends[id] = value;
+        } else {
+            end.set(id, value);
+        }
+    }
+
+    void setFirstChild(int id, int value) {
+        if (firstChildren != null) {
+            firstChildren[id] = value;
+        } else {
+            firstChild.set(id, value);
+        }
+    }
+
+    void setNextSibling(int id, int value) {
+        if (nextSiblings != null) {
+            nextSiblings[id] = value;
+        } else {
+            nextSibling.set(id, value);
+        }
+    }
+
+    void setSuffixLink(int id, int value) {
+        if (suffixLinks != null) {
+            suffixLinks[id] = value;
+        } else {
+            suffixLink.set(id, value);
+        }
+    }
+
+    /*
+     * Is query a substring of the indexed text s? O(query length times the
+     * number of siblings tried), comparing in place.
+     */
+    public boolean contains(CharSequence s, CharSequence query) {
+        return query.length() == 0 || find(s, query, null) != NONE;
+    }
+
+    /*
+     * Finds the id on whose edge a non-empty query ends, or NONE. If depth is
+     * given, depth[0] is set to the string depth of the parent of that id.
+     */
+    public int find(CharSequence s, CharSequence query, int[] depth) {
+        int node = ROOT;
+        int id = NONE;
+        int nodeDepth = 0;
+        int i = 0;
+
+        while (i < query.length()) {
+            /*
+             * The query runs past the end of a leaf.
+             */
+            if (id != NONE && isLeaf(id)) {
+                return NONE;
+            }
+            if (id != NONE) {
+                nodeDepth += getEnd(id, s.length()) - getStart(id);
+                node = id;
+            }
+
+            id = getChild(node, query.charAt(i), s);
+            if (id == NONE) {
+                return NONE;
+            }
+
+            int edgeEnd = getEnd(id, s.length());
+            int j = getStart(id) + 1;
+            i++;
+
+            while (i < query.length() && j < edgeEnd) {
+                if (s.charAt(j) != query.charAt(i)) {
+                    return NONE;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        if (depth != null) {
+            depth[0] = nodeDepth;
+        }
+        return id;
+    }
+
+    /*
+     * The start index of every occurrence of a non-empty query, in tree order.
+     * The text must end with a unique terminator.
+     */
+    public int[] locate(CharSequence s, CharSequence query) {
+        int[] depth = new int[1];
+        int id = query.length() == 0 ? NONE : find(s, query, depth);
+        if (id == NONE) {
+            return new int[0];
+        }
+
+        int[] positions = new int[8];
+        int found = 0;
+
+        /*
+         * Depth first below the match, with the depth of each id's parent.
+         */
+        int[] stack = new int[16];
+        int[] depths = new int[16];
+        int size = 0;
+        stack[size] = id;
+        depths[size] = depth[0];
+        size++;
+
+        while (size > 0) {
+            size--;
+            int top = stack[size];
+            int parentDepth = depths[size];
+
+            if (isLeaf(top)) {
+                if (found == positions.length) {
+                    positions = Arrays.copyOf(positions, found * 2);
+                }
+                positions[found++] = getStart(top) - parentDepth;
+                continue;
+            }
+
+            int childDepth = parentDepth + getEnd(top, s.length()) - getStart(top);
+            for (int child = getFirstChild(top); child != NONE; child = getNextSibling(child)) {
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                    depths = Arrays.copyOf(depths, size * 2);
+                }
+                stack[size] = child;
+                depths[size] = childDepth;
+                size++;
+            }
+        }
+
+        return Arrays.copyOf(positions, found);
+    }
+
+    /*
+     * Counts the root plus internal nodes, the same quantity as Util.countNodes.
+     */
+    public int countNodes() {
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            if (!isLeaf(id)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /*
+     * Bytes held by the columns, including unused capacity.
+     */
+    public long memoryBytes() {
+        return 5L * Integer.BYTES * start.capacity();
+    }
+
+    /*
+     * Traverses the tree, in the same format as Util.suffixes.
+     * Sibling order is insertion order, so compare sorted output against other node
+     * types.
+     */
+    public void suffixes(int id, String path, CharSequence s, StringBuilder builder) {
+        if (isLeaf(id)) {
+            builder.append(path + "\n");
+            return;
+        }
+
+        for (int child = getFirstChild(id); child != NONE; child = getNextSibling(child)) {
+            suffixes(child, path + "/" + s.subSequence(getStart(child), getEnd(child, s.length())), s, builder);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Throughput, allocation and GC measurements for construction and queries.
+ *
+ * Usage: java -cp bin Benchmark [sizes] [iterations]
+ *   sizes: comma separated input lengths, default 1000,10000,100000,1000000.
+ *   iterations: measured iterations per case, default 5 (after as many warmups).
+ *
+ * Each line reports ns/char, bytes allocated per char by the benchmark thread and
+ * the time spent in GC, i.e. the same columns as JMH with -prof gc. Work done on
+ * other threads, as by ParallelSuffixTreeBuilder, is timed but its allocation is
+ * not counted. JMH itself cannot drive this tree because it refuses benchmarks
+ * in the default package.
+ *
+ * Inputs are random strings over an alphabet, or random English words, plus a
+ * unique 'z' terminator. CharNode is only run on the lowercase alphabets, and
+ * AlphabetNode on the characters of each input. Construction is also run on DNA
+ * made of one 1000 character segment repeated.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class Benchmark {
+    public static final String DNA = "acgt";
+    public static final String TEXT = "abcdefghijklmnopqrstuvwxy";
+
+    private static final int QUERIES = 10_000;
+    private static final int[] BATCH_SIZES = { 1, 64, 1_000, QUERIES };
+
+    /*
+     * Approximate searches visit far more of the tree than exact ones, so fewer
+     * of the queries are used.
+     */
+    private static final int APPROXIMATE_QUERIES = 100;
+    private static final int APPROXIMATE_K = 2;
+
+    /*
+     * Util.suffixes materializes every suffix, so it is quadratic in the input.
+     * walk/map visits the same leaves without building any strings.
+     */
+    private static final int MAX_SUFFIXES_LENGTH = 100_000;
+
+    interface Task {
+        Object run();
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = { 1_000, 10_000, 100_000, 1_000_000 };
+        if (args.length > 0) {
+            String[] parts = args[0].split(",");
+            sizes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                sizes[i] = Integer.parseInt(parts[i].trim());
+            }
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        System.out.println(String.format("%-28s %10s %12s %12s %10s", "benchmark", "chars", "ns/char", "B/char",
+                "gc ms"));
+
+        for (int size : sizes) {
+            for (String name : new String[] { "dna", "text", "words" }) {
+                String s = name.equals("words") ? randomWords(size, 42)
+                        : randomText(name.equals("dna") ? DNA : TEXT, size, 42);
+
+                /*
+                 * CharNode cannot index the spaces and punctuation of words.
+                 */
+                boolean lowercase = !name.equals("words");
+
+                if (lowercase) {
+                    measure("build/char/" + name, size, iterations,
+                            () -> SuffixTreeBuilder.build(s, new CharNodeFactory()));
+                }
+                measure("build/adaptive/" + name, size, iterations,
+                        () -> SuffixTreeBuilder.build(s, new AdaptiveNodeFactory()));
+                measure("build/alphabet/" + name, size, iterations,
+                        () -> SuffixTreeBuilder.build(s, AlphabetNodeFactory.of(s)));
+                measure("build/map/" + name, size, iterations,
+                        () -> SuffixTreeBuilder.build(s, new MapNodeFactory()));
+                measure("build/map+metrics/" + name, size, iterations,
+                        () -> SuffixTreeBuilder.build(s, new MapNodeFactory(), new BuildMetrics()));
+                if (name.equals("dna")) {
+                    measure("build/dna/" + name, size, iterations,
+                            () -> SuffixTreeBuilder.build(s, new DnaNodeFactory()));
+                }
+                measure("build/arena/" + name, size, iterations, () -> ArenaSuffixTreeBuilder.build(s));
+                /*
+                 * Off the heap, with a budget of a quarter of the columns, so the
+                 * rest spills.
+                 */
+                long budget = Math.max(OffHeapStore.PAGE_BYTES, 5L * Integer.BYTES * (2 * size + 1) / 4);
+                measure("build/offheap/" + name, size, iterations, () -> {
+                    try (OffHeapStore store = new OffHeapStore(budget)) {
+                        return ArenaSuffixTreeBuilder.build(s, store).size();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+                    int parallelism = threads;
+                    measure("build/parallel" + threads + "/map/" + name, size, iterations,
+                            () -> ParallelSuffixTreeBuilder.build(s, new MapNodeFactory(), parallelism));
+                }
+                if (name.equals("dna")) {
+                    /*
+                     * One segment repeated, where inserting each bucket's suffixes
+                     * is quadratic and the parallel builder falls back to the
+                     * sequential one.
+                     */
+                    String periodic = periodicText(DNA, 1000, size, 42);
+                    measure("build/map/periodic", size, iterations,
+                            () -> SuffixTreeBuilder.build(periodic, new MapNodeFactory()));
+                    for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+                        int parallelism = threads;
+                        measure("build/parallel" + threads + "/map/periodic", size, iterations,
+                                () -> ParallelSuffixTreeBuilder.build(periodic, new MapNodeFactory(), parallelism));
+                    }
+                }
+                measure("append/map/" + name, size, iterations, () -> {
+                    SuffixTreeBuilder online = new SuffixTreeBuilder(new MapNodeFactory());
+                    for (int i = 0; i < s.length(); i++) {
+                        online.append(s.charAt(i));
+                    }
+                    return online.getRoot();
+                });
+                measure("append/window4096/" + name, size, iterations, () -> {
+                    SlidingWindowSuffixTree window = new SlidingWindowSuffixTree(4096);
+                    for (int i = 0; i < s.length(); i++) {
+                        window.append(s.charAt(i));
+                    }
+                    return window;
+                });
+
+                Node root = SuffixTreeBuilder.build(s, new MapNodeFactory());
+                String[] queries = randomQueries(s, QUERIES, 43);
+
+                if (lowercase) {
+                    Node charRoot = SuffixTreeBuilder.build(s, new CharNodeFactory());
+                    measure("contains/char/" + name, QUERIES, iterations, () -> countFound(charRoot, s, queries));
+                }
+                Node adaptiveRoot = SuffixTreeBuilder.build(s, new AdaptiveNodeFactory());
+                measure("contains/adaptive/" + name, QUERIES, iterations,
+                        () -> countFound(adaptiveRoot, s, queries));
+                Node alphabetRoot = SuffixTreeBuilder.build(s, AlphabetNodeFactory.of(s));
+                measure("contains/alphabet/" + name, QUERIES, iterations,
+                        () -> countFound(alphabetRoot, s, queries));
+
+                measure("contains/map/" + name, QUERIES, iterations, () -> countFound(root, s, queries));
+
+                /*
+                 * A skewed stream of the same queries, where a few make up most
+                 * lookups, located directly and through a cache.
+                 */
+                Random skew = new Random(45);
+                String[] skewed = new String[QUERIES];
+                for (int k = 0; k < QUERIES; k++) {
+                    skewed[k] = queries[(int) (Math.pow(skew.nextDouble(), 4) * QUERIES)];
+                }
+                Util.annotate(root, s);
+                measure("skewed/locate/map/" + name, QUERIES, iterations, () -> {
+                    long total = 0;
+                    for (String query : skewed) {
+                        total += Util.locate(root, s, query).length;
+                    }
+                    return total;
+                });
+                QueryCache cache = new QueryCache(root, s, 1 << 20);
+                measure("skewed/locate/cached/" + name, QUERIES, iterations, () -> {
+                    long total = 0;
+                    for (String query : skewed) {
+                        total += cache.locate(query).length;
+                    }
+                    return total;
+                });
+
+                measure("freeze/map/" + name, size, iterations, () -> FrozenSuffixTree.freeze(root, s));
+                FrozenSuffixTree frozen = FrozenSuffixTree.freeze(root, s);
+                measure("contains/frozen/" + name, QUERIES, iterations, () -> {
+                    int found = 0;
+                    for (String query : queries) {
+                        found += frozen.contains(query) ? 1 : 0;
+                    }
+                    return found;
+                });
+
+                int[] pairs = new Random(44).ints(2 * QUERIES, 0, s.length()).toArray();
+                measure("lce/frozen/" + name, QUERIES, iterations, () -> {
+                    long total = 0;
+                    for (int k = 0; k < pairs.length; k += 2) {
+                        total += frozen.lce(pairs[k], pairs[k + 1]);
+                    }
+                    return total;
+                });
+                measure("lce/scan/" + name, QUERIES, iterations, () -> {
+                    long total = 0;
+                    for (int k = 0; k < pairs.length; k += 2) {
+                        int i = pairs[k];
+                        int j = pairs[k + 1];
+                        int length = 0;
+                        while (i + length < s.length() && j + length < s.length()
+                                && s.charAt(i + length) == s.charAt(j + length)) {
+                            length++;
+                        }
+                        total += length;
+                    }
+                    return total;
+                });
+
+                Repeats repeats = new Repeats(frozen);
+                measure("repeats/maximal/" + name, size, iterations,
+                        () -> countRepeats(listener -> repeats.maximal(8, 2, listener)));
+                measure("repeats/supermaximal/" + name, size, iterations,
+                        () -> countRepeats(listener -> repeats.supermaximal(8, 2, listener)));
+                measure("repeats/tandem/" + name, size, iterations,
+                        () -> countRepeats(listener -> repeats.tandem(8, 1, listener)));
+
+                QueryEngine engine = new QueryEngine(root, s);
+                for (int batch : BATCH_SIZES) {
+                    CharSequence[][] batches = new CharSequence[(QUERIES + batch - 1) / batch][];
+                    for (int b = 0; b < batches.length; b++) {
+                        batches[b] = Arrays.copyOfRange(queries, b * batch, Math.min(QUERIES, (b + 1) * batch),
+                                CharSequence[].class);
+                    }
+
+                    measure("batch" + batch + "/contains/map/" + name, QUERIES, iterations, () -> {
+                        int found = 0;
+                        for (CharSequence[] b : batches) {
+                            for (boolean f : engine.contains(b)) {
+                                if (f) {
+                                    found++;
+                                }
+                            }
+                        }
+                        return found;
+                    });
+                    measure("batch" + batch + "/count/map/" + name, QUERIES, iterations, () -> {
+                        long total = 0;
+                        for (CharSequence[] b : batches) {
+                            for (int c : engine.count(b)) {
+                                total += c;
+                            }
+                        }
+                        return total;
+                    });
+                }
+
+                measure("countNodes/map/" + name, size, iterations, () -> Util.countNodes(root));
+                measure("suffixArray/map/" + name, size, iterations, () -> SuffixArray.of(root, s));
+                measure("longestRepeated/map/" + name, size, iterations, () -> Substrings.longestRepeated(root));
+                for (ApproximateMatcher.Distance distance : ApproximateMatcher.Distance.values()) {
+                    String label = distance.name().toLowerCase() + APPROXIMATE_K;
+                    measure("approximate/" + label + "/map/" + name, APPROXIMATE_QUERIES, iterations,
+                            () -> countApproximate(root, s, queries, distance, null));
+                    measure("approximate/" + label + "/pool/" + name, APPROXIMATE_QUERIES, iterations,
+                            () -> countApproximate(root, s, queries, distance, ForkJoinPool.commonPool()));
+                }
+                measure("walk/map/" + name, size, iterations, () -> {
+                    long[] total = new long[1];
+                    try {
+                        SuffixWalker.walk(root, s, (suffix, starts, ends, edges) -> total[0] += suffix);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return total[0];
+                });
+                String other = name.equals("words") ? randomWords(size, 7)
+                        : randomText(name.equals("dna") ? DNA : TEXT, size, 7);
+                Node linked = MatchingStatistics.prepare(SuffixTreeBuilder.build(s, new MapNodeFactory()), s);
+                measure("matchingStatistics/map/" + name, size, iterations, () -> {
+                    long[] total = new long[1];
+                    try {
+                        new MatchingStatistics(linked, s, (position, length, at) -> total[0] += length).append(other)
+                                .finish();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return total[0];
+                });
+                if (size <= MAX_SUFFIXES_LENGTH) {
+                    measure("suffixes/map/" + name, size, iterations, () -> {
+                        StringBuilder b = new StringBuilder();
+                        Util.suffixes(root, "", s, b, false);
+                        return b.length();
+                    });
+                }
+            }
+        }
+    }
+
+    private static int countApproximate(Node root, String s, String[] queries, ApproximateMatcher.Distance distance,
+            ForkJoinPool pool) {
+        int found = 0;
+        for (int i = 0; i < APPROXIMATE_QUERIES; i++) {
+            found += ApproximateMatcher.search(root, s, queries[i], APPROXIMATE_K, distance, pool).size();
+        }
+        return found;
+    }
+
+    interface RepeatSearch {
+        void run(Repeats.Listener listener) throws IOException;
+    }
+
+    /*
+     * Counts the occurrences reported by a search.
+     */
+    private static long countRepeats(RepeatSearch search) {
+        long[] total = new long[1];
+        try {
+            search.run((positions, from, length, count) -> total[0] += count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return total[0];
+    }
+
+    private static int countFound(Node root, String s, String[] queries) {
+        int found = 0;
+        for (String query : queries) {
+            if (Util.contains(root, s, query)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /*
+     * Runs the task for warmup then measured iterations and prints the averages,
+     * normalized by units (characters indexed, or queries run).
+     */
+    public static void measure(String name, int units, int iterations, Task task) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        try {
+            for (int i = 0; i < iterations; i++) {
+                task.run();
+            }
+
+            long gcBefore = gcMillis();
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long before = System.nanoTime();
+
+            for (int i = 0; i < iterations; i++) {
+                task.run();
+            }
+
+            long nanos = System.nanoTime() - before;
+            long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+            long gc = gcMillis() - gcBefore;
+
+            double n = (double) units * iterations;
+            System.out.println(String.format("%-28s %10d %12.1f %12.1f %10.1f", name, units, nanos / n, bytes / n,
+                    gc / (double) iterations));
+        } catch (OutOfMemoryError e) {
+            System.out.println(String.format("%-28s %10d  out of memory", name, units));
+        }
+    }
+
+    /*
+     * Total collection time across all collectors.
+     */
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /*
+     * A random string over the alphabet, terminated by a unique 'z'.
+     */
+    public static String randomText(String alphabet, int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder b = new StringBuilder(length + 1);
+        for (int i = 0; i < length; i++) {
+            b.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return b.append('z').toString();
+    }
+
+    /*
+     * A random segment of the given period repeated up to length, plus 'z'.
+     */
+    public static String periodicText(String alphabet, int period, int length, long seed) {
+        String segment = randomText(alphabet, period, seed);
+        StringBuilder b = new StringBuilder(length + 1);
+        while (b.length() < length) {
+            b.append(segment, 0, Math.min(period, length - b.length()));
+        }
+        return b.append('z').toString();
+    }
+
+    /*
+     * Common English words, none containing 'z'.
+     */
+    private static final String[] WORDS = ("the of and to in a is that for it as was with be by on not he i this are or"
+            + " his from at which but have an they you were her she there one all we their can has more when will"
+            + " would if no out so what up said about other into than its time only could new them man some these"
+            + " then two first may any like now my such make over our even most me state after also made many did"
+            + " must before back see through way where get much go well your know should down work year because"
+            + " come people just say each those take day good how long mr own too little use us very great still"
+            + " men here life both between old under last never place same another think house while high right"
+            + " might came off find states since used give against three himself look few general hand school part"
+            + " small american home during number again mrs around thought went without however govern don does"
+            + " got public united point end become head once course fact upon need system set every war put form"
+            + " water took program present government").split(" ");
+
+    /*
+     * Words of roughly natural frequency, with spaces, commas and full stops,
+     * terminated by a unique 'z'.
+     */
+    public static String randomWords(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder b = new StringBuilder(length + 16);
+        while (b.length() < length) {
+            /*
+             * Zipf-like: the k-th word is about 1/k as likely as the first.
+             */
+            int k = (int) Math.pow(WORDS.length + 1, random.nextDouble()) - 1;
+            b.append(WORDS[Math.min(k, WORDS.length - 1)]);
+
+            int punctuation = random.nextInt(20);
+            b.append(punctuation == 0 ? ". " : punctuation == 1 ? ", " : " ");
+        }
+        b.setLength(length);
+        return b.append('z').toString();
+    }
+
+    /*
+     * Random substrings of s, between 8 and 32 characters, so that every query is
+     * present.
+     */
+    public static String[] randomQueries(String s, int count, long seed) {
+        Random random = new Random(seed);
+        String[] queries = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = Math.min(s.length(), 8 + random.nextInt(25));
+            int start = random.nextInt(s.length() - length + 1);
+            queries[i] = s.substring(start, start + length);
+        }
+        return queries;
+    }
+}
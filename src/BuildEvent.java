@@ -0,0 +1,36 @@
+/*
+ * A JFR event with the counters of one BuildMetrics, see BuildMetrics.commit.
+ */
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("ukkonen.SuffixTreeBuild")
+@Label("Suffix Tree Build")
+@Category("Suffix Tree")
+@Description("Work done by SuffixTreeBuilder")
+public class BuildEvent extends jdk.jfr.Event {
+    @Label("Characters")
+    long characters;
+
+    @Label("Leaves")
+    long leaves;
+
+    @Label("Splits")
+    long splits;
+
+    @Label("Suffix Link Traversals")
+    long suffixLinkTraversals;
+
+    @Label("Root Returns")
+    long rootReturns;
+
+    @Label("Skips")
+    long skips;
+
+    @Label("Build Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
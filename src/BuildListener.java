@@ -0,0 +1,47 @@
+/*
+ * Observes SuffixTreeBuilder as it works, for debugging and metrics.
+ *
+ * The builder checks for a listener once per event, so building without one
+ * costs a null check and nothing else. Methods are called on the building
+ * thread, in the middle of the algorithm: they must not modify the tree.
+ */
+public interface BuildListener {
+    /*
+     * The builder is about to extend the tree over s from index from, which is 0
+     * for a complete build and the old length for an append.
+     */
+    default void started(CharSequence s, int from) {
+    }
+
+    /*
+     * The builder has reached the end of s.
+     */
+    default void finished(CharSequence s) {
+    }
+
+    /*
+     * A new leaf edge below parent.
+     */
+    default void leafCreated(Node parent, Edge leaf) {
+    }
+
+    /*
+     * An edge of parent was split: upper is the same Edge object as before, now
+     * ending at the new internal node upper.child, and lower is the rest of the
+     * old edge below that node.
+     */
+    default void split(Node parent, Edge upper, Edge lower) {
+    }
+
+    /*
+     * A suffix link was followed, to the root or to an internal node.
+     */
+    default void suffixLinkTraversed(Node from, Node to) {
+    }
+
+    /*
+     * The skip/count walk jumped over the whole of an edge.
+     */
+    default void skipped(Edge edge) {
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Counts what SuffixTreeBuilder does, to explain why one input builds slower
+ * than another. Pass it to a build, then read a snapshot or commit a JFR event.
+ *
+ * splits is also the number of internal nodes created, and leaves plus splits
+ * the number of edges. rootReturns are suffix link traversals that land on the
+ * root, after which the builder walks down again from the root with skips, so a
+ * high rootReturns or skips per character points at the slow path.
+ *
+ * Not thread safe: use one per build.
+ */
+public class BuildMetrics implements BuildListener {
+    private long characters;
+    private long leaves;
+    private long splits;
+    private long suffixLinkTraversals;
+    private long rootReturns;
+    private long skips;
+    private long nanos;
+
+    private long startedAt;
+    private int from;
+
+    public static class Snapshot {
+        public final long characters;
+        public final long leaves;
+        public final long splits;
+        public final long suffixLinkTraversals;
+        public final long rootReturns;
+        public final long skips;
+        public final long nanos;
+
+        Snapshot(BuildMetrics m) {
+            characters = m.characters;
+            leaves = m.leaves;
+            splits = m.splits;
+            suffixLinkTraversals = m.suffixLinkTraversals;
+            rootReturns = m.rootReturns;
+            skips = m.skips;
+            nanos = m.nanos;
+        }
+
+        public double charactersPerSecond() {
+            return nanos == 0 ? 0 : characters * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "characters=%d leaves=%d splits=%d suffixLinkTraversals=%d rootReturns=%d skips=%d"
+                            + " charactersPerSecond=%.0f",
+                    characters, leaves, splits, suffixLinkTraversals, rootReturns, skips, charactersPerSecond());
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /*
+     * Records the counters so far as a BuildEvent, if JFR is recording it.
+     */
+    public void commit() {
+        BuildEvent event = new BuildEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+
+        event.characters = characters;
+        event.leaves = leaves;
+        event.splits = splits;
+        event.suffixLinkTraversals = suffixLinkTraversals;
+        event.rootReturns = rootReturns;
+        event.skips = skips;
+        event.nanos = nanos;
+        event.commit();
+    }
+
+    @Override
+    public void started(CharSequence s, int from) {
+        this.from = from;
+        startedAt = System.nanoTime();
+    }
+
+    @Override
+    public void finished(CharSequence s) {
+        nanos += System.nanoTime() - startedAt;
+        characters += s.length() - from;
+    }
+
+    @Override
+    public void leafCreated(Node parent, Edge leaf) {
+        leaves++;
+    }
+
+    @Override
+    public void split(Node parent, Edge upper, Edge lower) {
+        splits++;
+    }
+
+    @Override
+    public void suffixLinkTraversed(Node from, Node to) {
+        suffixLinkTraversals++;
+        if (to.getIsRoot()) {
+            rootReturns++;
+        }
+    }
+
+    @Override
+    public void skipped(Edge edge) {
+        skips++;
+    }
+}
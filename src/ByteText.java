@@ -0,0 +1,49 @@
+/*
+ * A text of one byte per symbol, read as the characters 0..255 (Latin-1).
+ *
+ * Half the size of the same text as a String of chars, and suitable for binary
+ * input. Views made by subSequence share the array.
+ */
+import java.nio.charset.StandardCharsets;
+
+public class ByteText implements CharSequence {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    public ByteText(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public ByteText(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (char) (bytes[offset + index] & 0xFF);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end);
+        }
+        return new ByteText(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -18,7 +18,11 @@ public class CharNode implements Node {
 
     public Edge getEdge(char c) 
     {
-        return edges[c - 'a'];
+        /*
+         * Characters outside 'a'..'z' can be looked up, they are never present.
+         */
+        int k = c - 'a';
+        return k >= 0 && k < NUMBER_OF_CHARACTERS ? edges[k] : null;
     }
 
     public boolean setEdge(char c, Edge edge)
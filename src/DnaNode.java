@@ -0,0 +1,105 @@
+/*
+ * Represents either the root of the tree or an internal branch point, for DNA
+ * input.
+ *
+ * There is one slot per base (a, c, g, t) and one for a separator such as the
+ * '$' terminator, held in fields rather than an array. Inputs with more than one
+ * distinct separator (e.g. a generalized tree) keep the rest in a map that is
+ * only created when needed.
+ */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DnaNode implements Node {
+    private boolean isRoot;
+    private Node suffixLink;
+
+    private Edge a;
+    private Edge c;
+    private Edge g;
+    private Edge t;
+
+    private char separator;
+    private Edge separatorEdge;
+    private Map<Character, Edge> otherSeparators;
+
+    public Edge getEdge(char ch) {
+        switch (ch) {
+            case 'a':
+                return a;
+            case 'c':
+                return c;
+            case 'g':
+                return g;
+            case 't':
+                return t;
+            default:
+                if (separatorEdge != null && separator == ch) {
+                    return separatorEdge;
+                }
+                return otherSeparators == null ? null : otherSeparators.get(ch);
+        }
+    }
+
+    public boolean setEdge(char ch, Edge edge) {
+        switch (ch) {
+            case 'a':
+                a = edge;
+                break;
+            case 'c':
+                c = edge;
+                break;
+            case 'g':
+                g = edge;
+                break;
+            case 't':
+                t = edge;
+                break;
+            default:
+                if (separatorEdge == null || separator == ch) {
+                    separator = ch;
+                    separatorEdge = edge;
+                } else {
+                    if (otherSeparators == null) {
+                        otherSeparators = new HashMap<>();
+                    }
+                    otherSeparators.put(ch, edge);
+                }
+        }
+        return true;
+    }
+
+    public List<Edge> getAllEdges() {
+        List<Edge> edges = new ArrayList<>(5);
+        edges.add(a);
+        edges.add(c);
+        edges.add(g);
+        edges.add(t);
+        edges.add(separatorEdge);
+
+        if (otherSeparators != null) {
+            edges.addAll(otherSeparators.values());
+        }
+        return edges;
+    }
+
+    public boolean getIsRoot() {
+        return isRoot;
+    }
+
+    public boolean setIsRoot(boolean isTrue) {
+        isRoot = isTrue;
+        return true;
+    }
+
+    public Node getSuffixLink() {
+        return suffixLink;
+    }
+
+    public boolean setSuffixLink(Node node) {
+        suffixLink = node;
+        return true;
+    }
+}
@@ -0,0 +1,5 @@
+public class DnaNodeFactory implements NodeFactory {
+    public Node createNode() {
+        return new DnaNode();
+    }
+}
@@ -1,16 +1,37 @@
-
 /*
  * Represents a substring using a start and end index.
+ *
+ * Leaf edges all end at the global end, i.e. the length of the text indexed so
+ * far, and store OPEN_END instead of a hard end. Use getEnd to resolve it.
  */
 public class Edge {
+    public static final int OPEN_END = Integer.MAX_VALUE;
+
     public int start;
-    public End end;
+    public int end;
     public Node child;
 
+    /*
+     * Set by Util.annotate.
+     *
+     * suffix: for a leaf, the start index of the suffix it represents. For an
+     * internal edge, the smallest such index among the leaves below it.
+     * leaves: the number of leaves below the edge, 1 for a leaf.
+     */
+    public int suffix = -1;
+    public int leaves;
+
     public Edge(
             int start,
-            End end) {
+            int end) {
         this.start = start;
         this.end = end;
     }
-}
\ No newline at end of file
+
+    /*
+     * The exclusive end of the edge, given the length of the indexed text.
+     */
+    public int getEnd(int length) {
+        return end == OPEN_END ? length : end;
+    }
+}
@@ -1,11 +0,0 @@
-/*
- * Represents a global pointer to the terminal index.
- * All terminal edges to a single instance of this class.
- */
-public class End {
-    public int end;
-
-    public End(int end) {
-        this.end = end;
-    }
-}
\ No newline at end of file
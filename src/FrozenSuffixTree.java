@@ -0,0 +1,352 @@
+/*
+ * A finished suffix tree laid out for reading, with constant time lowest
+ * common ancestor (LCA) and longest common extension (LCE) queries.
+ *
+ * Nodes get ids in depth first preorder, children in order of their first
+ * character, so each subtree is the contiguous id range id..next[id]. The
+ * first child of an internal node is id + 1, and a sibling follows at
+ * next[id]. The leaves come out in suffix array order. A lookup reads forward
+ * through a few int arrays instead of chasing nodes scattered over the heap.
+ *
+ * Every id records its string depth. An Euler tour visits the internal nodes,
+ * and a RangeMinimum over the depths along it finds the shallowest node between
+ * two visits, which is their LCA. String depth works as well as tree depth
+ * here, because it strictly grows along every path. Leaves stay out of the
+ * tour, since a leaf's ancestors are its parent's, which halves the tour. The
+ * LCE of two suffixes is the string depth of their leaves' LCA.
+ *
+ * The text must end with a unique terminator, so that every suffix is a leaf.
+ * Generalized trees, which end every document with the same TERMINATOR, do
+ * not qualify.
+ */
+import java.util.Arrays;
+import java.util.List;
+
+public class FrozenSuffixTree {
+    public static final int ROOT = 0;
+    public static final int NONE = -1;
+
+    private final CharSequence s;
+
+    /*
+     * Per id: the start of the entering edge, the string depth, the parent, the
+     * id after the subtree, and for leaves the suffix (NONE otherwise).
+     */
+    private final int[] start;
+    private final int[] depth;
+    private final int[] parent;
+    private final int[] next;
+    private final int[] suffix;
+
+    /*
+     * The leaf of every suffix.
+     */
+    private final int[] leaves;
+
+    /*
+     * The Euler tour of the internal nodes, the position of each internal id's
+     * first visit, and the minima of the depths along the tour. For LCE, the
+     * first visit of each suffix's parent is copied out, which saves two
+     * dependent loads per suffix.
+     */
+    private final int[] tour;
+    private final int[] first;
+    private final int[] suffixFirst;
+    private final RangeMinimum minimum;
+
+    private FrozenSuffixTree(CharSequence s, int[] start, int[] depth, int[] parent, int[] next, int[] suffix,
+            int[] leaves) {
+        this.s = s;
+        this.start = start;
+        this.depth = depth;
+        this.parent = parent;
+        this.next = next;
+        this.suffix = suffix;
+        this.leaves = leaves;
+
+        int size = start.length;
+        int internal = size - leaves.length;
+
+        tour = new int[Math.max(1, 2 * internal - 1)];
+        first = new int[size];
+        int[] stack = new int[16];
+        int top = 0;
+        int length = 0;
+
+        stack[0] = ROOT;
+        tour[length++] = ROOT;
+
+        /*
+         * Preorder again: an id closes every open node whose range it is past,
+         * and each close returns the tour to the parent.
+         */
+        for (int id = 1; id < size; id++) {
+            first[id] = NONE;
+            if (suffix[id] != NONE) {
+                continue;
+            }
+
+            while (id >= next[stack[top]]) {
+                top--;
+                tour[length++] = stack[top];
+            }
+
+            first[id] = length;
+            tour[length++] = id;
+            if (++top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top] = id;
+        }
+        while (top > 0) {
+            top--;
+            tour[length++] = stack[top];
+        }
+
+        suffixFirst = new int[leaves.length];
+        for (int k = 0; k < leaves.length; k++) {
+            suffixFirst[k] = first[parent[leaves[k]]];
+        }
+
+        int[] depths = new int[length];
+        for (int k = 0; k < length; k++) {
+            depths[k] = depth[tour[k]];
+        }
+        minimum = new RangeMinimum(depths);
+    }
+
+    /*
+     * The text of a generalized tree ends every document with TERMINATOR, so no
+     * terminator is unique, and the suffixes that end on a node have no leaf.
+     * Such trees are rejected, like any other text without a unique terminator.
+     */
+    public static FrozenSuffixTree freeze(Node root, CharSequence s) {
+        if (!Util.isTerminated(s)) {
+            throw new IllegalArgumentException("The text must end with a unique terminator"
+                    + (s.length() > 0 && s.charAt(s.length() - 1) == SuffixTreeBuilder.TERMINATOR
+                            ? "; generalized trees cannot be frozen." : "."));
+        }
+
+        int n = s.length();
+        int capacity = 2 * n + 1;
+        int[] start = new int[capacity];
+        int[] depth = new int[capacity];
+        int[] parent = new int[capacity];
+        int[] suffix = new int[capacity];
+        int[] leaves = new int[n];
+        int size = 0;
+        int leafCount = 0;
+
+        /*
+         * Edges still to visit and the id of the node above each. Children are
+         * pushed largest first, so the smallest is numbered first.
+         */
+        Edge[] stack = new Edge[16];
+        int[] above = new int[16];
+        int top = 0;
+
+        start[ROOT] = 0;
+        depth[ROOT] = 0;
+        parent[ROOT] = NONE;
+        suffix[ROOT] = NONE;
+        size++;
+        Node node = root;
+        int id = ROOT;
+
+        while (true) {
+            if (node != null) {
+                List<Edge> edges = node.getAllEdges();
+                if (top + edges.size() > stack.length) {
+                    stack = Arrays.copyOf(stack, Math.max(top + edges.size(), stack.length * 2));
+                    above = Arrays.copyOf(above, stack.length);
+                }
+
+                int base = top;
+                for (Edge e : edges) {
+                    if (e == null) {
+                        continue;
+                    }
+                    char c = s.charAt(e.start);
+                    int k = top;
+                    while (k > base && s.charAt(stack[k - 1].start) < c) {
+                        stack[k] = stack[k - 1];
+                        k--;
+                    }
+                    stack[k] = e;
+                    above[top] = id;
+                    top++;
+                }
+            }
+
+            if (top == 0) {
+                break;
+            }
+
+            top--;
+            Edge e = stack[top];
+            if (size == capacity || e.child == null && leafCount == n) {
+                throw new IllegalArgumentException("The text must end with a unique terminator.");
+            }
+
+            id = size++;
+            start[id] = e.start;
+            parent[id] = above[top];
+            depth[id] = depth[parent[id]] + e.getEnd(n) - e.start;
+
+            if (e.child == null) {
+                suffix[id] = n - depth[id];
+                leaves[suffix[id]] = id;
+                leafCount++;
+            } else {
+                suffix[id] = NONE;
+            }
+            node = e.child;
+        }
+
+        if (leafCount != n) {
+            throw new IllegalArgumentException("The text must end with a unique terminator.");
+        }
+
+        /*
+         * Subtree sizes, children before parents.
+         */
+        int[] next = new int[size];
+        for (int k = size - 1; k >= 0; k--) {
+            next[k] += 1;
+            if (k > 0) {
+                next[parent[k]] += next[k];
+            }
+        }
+        for (int k = 0; k < size; k++) {
+            next[k] += k;
+        }
+
+        return new FrozenSuffixTree(s, Arrays.copyOf(start, size), Arrays.copyOf(depth, size),
+                Arrays.copyOf(parent, size), next, Arrays.copyOf(suffix, size), leaves);
+    }
+
+    /*
+     * The lowest common ancestor of two ids.
+     */
+    public int lca(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+
+        int from = first[suffix[a] == NONE ? a : parent[a]];
+        int to = first[suffix[b] == NONE ? b : parent[b]];
+        if (from > to) {
+            int swap = from;
+            from = to;
+            to = swap;
+        }
+        return tour[minimum.argMin(from, to)];
+    }
+
+    /*
+     * The length of the longest common prefix of the suffixes at i and j.
+     */
+    public int lce(int i, int j) {
+        if (i == j) {
+            return s.length() - i;
+        }
+        int from = suffixFirst[i];
+        int to = suffixFirst[j];
+        return from <= to ? minimum.min(from, to) : minimum.min(to, from);
+    }
+
+    /*
+     * Is query a substring of the text?
+     */
+    public boolean contains(CharSequence query) {
+        int id = ROOT;
+        int i = 0;
+
+        while (i < query.length()) {
+            id = getChild(id, query.charAt(i));
+            if (id == NONE) {
+                return false;
+            }
+
+            int end = getEdgeEnd(id);
+            int j = start[id] + 1;
+            i++;
+
+            while (i < query.length() && j < end) {
+                if (s.charAt(j) != query.charAt(i)) {
+                    return false;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * The child of an id whose edge starts with c, or NONE. Children are sorted,
+     * so the scan stops at the first larger character.
+     */
+    public int getChild(int id, char c) {
+        if (suffix[id] != NONE) {
+            return NONE;
+        }
+        for (int child = id + 1; child < next[id]; child = next[child]) {
+            char first = s.charAt(start[child]);
+            if (first == c) {
+                return child;
+            }
+            if (first > c) {
+                return NONE;
+            }
+        }
+        return NONE;
+    }
+
+    public int size() {
+        return start.length;
+    }
+
+    public boolean isLeaf(int id) {
+        return suffix[id] != NONE;
+    }
+
+    /*
+     * The suffix of a leaf, or NONE for internal ids.
+     */
+    public int getSuffix(int id) {
+        return suffix[id];
+    }
+
+    public int getLeaf(int suffix) {
+        return leaves[suffix];
+    }
+
+    public int getDepth(int id) {
+        return depth[id];
+    }
+
+    public int getParent(int id) {
+        return parent[id];
+    }
+
+    /*
+     * The id after the subtree of id, which is its next sibling if it has one.
+     */
+    public int getNext(int id) {
+        return next[id];
+    }
+
+    public int getEdgeStart(int id) {
+        return start[id];
+    }
+
+    public int getEdgeEnd(int id) {
+        return id == ROOT ? 0 : start[id] + depth[id] - depth[parent[id]];
+    }
+
+    public CharSequence getText() {
+        return s;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * A suffix tree over many documents, which grows as documents are added.
+ *
+ * Each document is appended to the same tree by SuffixTreeBuilder.addDocument,
+ * followed by a TERMINATOR, so adding one costs O(its length) and nothing is
+ * rebuilt. Callers do not pick terminators.
+ *
+ * The leaves of a document end at its terminator, so the end index of a leaf
+ * records which document it belongs to. Suffixes that end on a node are kept
+ * by the builder (see getTerminals).
+ */
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+public class GeneralizedSuffixTree {
+    private final SuffixTreeBuilder builder;
+
+    /*
+     * In the order documents were added: their ids, the index of the first
+     * character of each, which is increasing, and the first document with the
+     * same id, whose counts theirs are added to.
+     */
+    private int[] ids = new int[16];
+    private int[] starts = new int[16];
+    private int[] firsts = new int[16];
+    private int size;
+
+    /*
+     * The first document of every id, only read while adding documents.
+     */
+    private final Map<Integer, Integer> firstOfId = new HashMap<>();
+
+    /*
+     * The factory's nodes must hold an edge for TERMINATOR, see
+     * SuffixTreeBuilder.forDocuments.
+     */
+    public GeneralizedSuffixTree(NodeFactory factory) {
+        builder = SuffixTreeBuilder.forDocuments(factory);
+    }
+
+    /*
+     * Per document counts of a pattern, by document id in the order the
+     * documents were added.
+     */
+    public static class Counts {
+        public final int[] documents;
+        public final int[] counts;
+
+        Counts(int[] documents, int[] counts) {
+            this.documents = documents;
+            this.counts = counts;
+        }
+
+        public int size() {
+            return documents.length;
+        }
+    }
+
+    public void addDocument(int id, CharSequence text) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            firsts = Arrays.copyOf(firsts, size * 2);
+        }
+
+        starts[size] = builder.addDocument(text);
+        ids[size] = id;
+        firsts[size] = firstOfId.computeIfAbsent(id, key -> size);
+        size++;
+    }
+
+    public int getDocumentCount() {
+        return size;
+    }
+
+    public Node getRoot() {
+        return builder.getRoot();
+    }
+
+    /*
+     * The documents and their terminators, which edges index into.
+     */
+    public CharSequence getText() {
+        return builder.getText();
+    }
+
+    /*
+     * The id of the document containing a text index.
+     */
+    public int documentAt(int index) {
+        return ids[ordinalAt(index)];
+    }
+
+    /*
+     * The ids of the documents that contain the pattern, in the order they were
+     * added.
+     */
+    public int[] documentsContaining(CharSequence pattern) {
+        return countPerDocument(pattern).documents;
+    }
+
+    /*
+     * The number of occurrences of the pattern in each document that contains
+     * it. Documents added under the same id are counted together.
+     */
+    public Counts countPerDocument(CharSequence pattern) {
+        int[] counts = new int[size];
+
+        /*
+         * The empty pattern occurs at every index of a document, and at its end.
+         */
+        if (pattern.length() == 0) {
+            for (int k = 0; k < size; k++) {
+                int terminator = (k + 1 < size ? starts[k + 1] : getText().length()) - 1;
+                counts[k] = terminator - starts[k] + 1;
+            }
+        } else {
+            countBelow(Util.find(getRoot(), getText(), pattern), counts);
+        }
+
+        int found = 0;
+        for (int k = 0; k < size; k++) {
+            if (firsts[k] != k) {
+                counts[firsts[k]] += counts[k];
+                counts[k] = 0;
+            }
+        }
+        for (int k = 0; k < size; k++) {
+            if (counts[k] > 0) {
+                found++;
+            }
+        }
+
+        int[] documents = new int[found];
+        int[] result = new int[found];
+        found = 0;
+        for (int k = 0; k < size; k++) {
+            if (counts[k] > 0) {
+                documents[found] = ids[k];
+                result[found++] = counts[k];
+            }
+        }
+        return new Counts(documents, result);
+    }
+
+    /*
+     * Adds one to the document of every suffix below the edge.
+     */
+    private void countBelow(Edge edge, int[] counts) {
+        if (edge == null) {
+            return;
+        }
+
+        Deque<Edge> stack = new ArrayDeque<>();
+        stack.push(edge);
+
+        while (!stack.isEmpty()) {
+            Edge e = stack.pop();
+
+            /*
+             * A leaf ends one past the terminator of its document.
+             */
+            if (e.child == null) {
+                counts[ordinalAt(e.end - 1)]++;
+                continue;
+            }
+
+            for (int suffix : builder.getTerminals(e.child)) {
+                counts[ordinalAt(suffix)]++;
+            }
+            for (Edge child : e.child.getAllEdges()) {
+                if (child != null) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    /*
+     * The suffixes of documents that end exactly on a node, see
+     * SuffixTreeBuilder.getTerminals.
+     */
+    int[] getTerminals(Node node) {
+        return builder.getTerminals(node);
+    }
+
+    /*
+     * The position, in the order added, of the document containing a text index.
+     */
+    int ordinalAt(int index) {
+        int k = Arrays.binarySearch(starts, 0, size, index);
+        return k >= 0 ? k : -k - 2;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * A column in a growable int array, which doubles when full.
+ */
+import java.util.Arrays;
+
+public class HeapIntColumn implements IntColumn {
+    private int[] values;
+
+    public HeapIntColumn(int capacity) {
+        values = new int[capacity];
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        values[index] = value;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /*
+     * The backing array, which is replaced when the column grows.
+     */
+    int[] values() {
+        return values;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+}
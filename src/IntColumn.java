@@ -0,0 +1,17 @@
+/*
+ * One column of an ArenaTree: an int for each id.
+ *
+ * Lets the same tree code run over heap arrays, memory-mapped files and other
+ * storage.
+ */
+public interface IntColumn {
+    int get(int index);
+    void set(int index, int value);
+
+    int capacity();
+
+    /*
+     * Grows the column to hold at least capacity values, keeping the existing ones.
+     */
+    void ensureCapacity(int capacity);
+}
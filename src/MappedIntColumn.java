@@ -0,0 +1,30 @@
+/*
+ * A read-only column over a buffer, such as a region of a memory-mapped file.
+ */
+import java.nio.IntBuffer;
+
+public class MappedIntColumn implements IntColumn {
+    private final IntBuffer values;
+
+    public MappedIntColumn(IntBuffer values) {
+        this.values = values;
+    }
+
+    public int get(int index) {
+        return values.get(index);
+    }
+
+    public void set(int index, int value) {
+        throw new UnsupportedOperationException("A mapped column is read-only.");
+    }
+
+    public int capacity() {
+        return values.limit();
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > values.limit()) {
+            throw new UnsupportedOperationException("A mapped column cannot grow.");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * A text read straight from a memory-mapped file, one byte per symbol, read as
+ * the characters 0..255 (Latin-1).
+ *
+ * The bytes stay in the page cache rather than on the heap, and remain usable
+ * for queries after the tree is built. Files are mapped in 1 GB regions; like
+ * every CharSequence the length is limited to Integer.MAX_VALUE bytes.
+ */
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MappedText implements CharSequence {
+    private static final int REGION_BITS = 30;
+    private static final int REGION_MASK = (1 << REGION_BITS) - 1;
+
+    private final MappedByteBuffer[] regions;
+    private final int offset;
+    private final int length;
+
+    private MappedText(MappedByteBuffer[] regions, int offset, int length) {
+        this.regions = regions;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static MappedText open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " has " + size + " bytes, more than a CharSequence can index.");
+            }
+
+            return map(channel, 0, (int) size);
+        }
+    }
+
+    /*
+     * Maps length bytes of an open file, starting at position. The mapping stays
+     * valid after the channel is closed.
+     */
+    public static MappedText map(FileChannel channel, long position, int length) throws IOException {
+        MappedByteBuffer[] regions = new MappedByteBuffer[(int) (((long) length + REGION_MASK) >>> REGION_BITS)];
+        for (int k = 0; k < regions.length; k++) {
+            long start = (long) k << REGION_BITS;
+            regions[k] = channel.map(FileChannel.MapMode.READ_ONLY, position + start,
+                    Math.min(length - start, 1L << REGION_BITS));
+        }
+
+        return new MappedText(regions, 0, length);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int at = offset + index;
+        return (char) (regions[at >>> REGION_BITS].get(at & REGION_MASK) & 0xFF);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end);
+        }
+        return new MappedText(regions, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            b.append(charAt(i));
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Streams a query against an indexed reference and reports its matching
+ * statistics: for every position of the query, the length of the longest prefix
+ * of the rest of the query that occurs in the reference, and one place where it
+ * occurs.
+ *
+ * The scanner keeps the locus of the current match in the tree. When the next
+ * character does not extend the match, the statistic of the match's first
+ * position is final, so it is reported. The first character is then dropped by
+ * following the suffix link of the node above the locus, and skip/count walks
+ * back down to the same depth, comparing nothing.
+ *
+ * Each character is one step forward, and a dropped character is at most one
+ * link plus some node hops, so the scan runs in time linear in the query
+ * (Chang and Lawler). That needs every internal node to have its suffix link,
+ * and SuffixTreeBuilder leaves most of them at the root. prepare completes them
+ * once for a finished tree, which any number of scanners then share; trees from
+ * ParallelSuffixTreeBuilder already have them. A scanner never changes the tree.
+ * On a tree that is not prepared the statistics are the same, but a node left
+ * linking to the root below depth 1 is rescanned from the root, which is no
+ * longer linear.
+ *
+ * Only the current match is held. The query is not kept, so it may be longer
+ * than memory, and positions are longs. They run on across finish, so queries
+ * scanned one after another are numbered as one stream.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+public class MatchingStatistics {
+    /*
+     * Receives the statistics in order of position. The match is
+     * reference[at, at + length), and at is -1 when length is 0.
+     */
+    public interface Listener {
+        void match(long position, int length, int at) throws IOException;
+    }
+
+    private final Node root;
+    private final CharSequence s;
+    private final Listener listener;
+
+    /*
+     * The current match is the last length characters read, and occurs at
+     * s[at, at + length). Its locus is the node at depth, or on edge below it
+     * when edge is not null.
+     */
+    private Node node;
+    private int depth;
+    private Edge edge;
+    private int length;
+    private int at;
+
+    /*
+     * The number of characters read.
+     */
+    private long position;
+
+    /*
+     * Completes the suffix links of the tree of s in place, and returns it. The
+     * tree must be finished, since the links a builder still appending relies on
+     * are overwritten.
+     */
+    public static Node prepare(Node root, CharSequence s) {
+        Util.linkSuffixes(root, s);
+        return root;
+    }
+
+    public MatchingStatistics(Node root, CharSequence s, Listener listener) {
+        this.root = root;
+        this.s = s;
+        this.listener = listener;
+        this.node = root;
+    }
+
+    public MatchingStatistics append(CharSequence query) throws IOException {
+        for (int i = 0; i < query.length(); i++) {
+            append(query.charAt(i));
+        }
+        return this;
+    }
+
+    public MatchingStatistics append(char c) throws IOException {
+        while (!extend(c)) {
+            if (length == 0) {
+                listener.match(position, 0, -1);
+                position++;
+                return this;
+            }
+
+            listener.match(position - length, length, at);
+            dropFirst();
+        }
+
+        position++;
+        return this;
+    }
+
+    /*
+     * Reports the statistics still pending, which all run to the end of the
+     * query, and starts over with an empty match. The position is kept.
+     */
+    public void finish() throws IOException {
+        for (int k = 0; k < length; k++) {
+            listener.match(position - length + k, length - k, at + k);
+        }
+
+        node = root;
+        depth = 0;
+        edge = null;
+        length = 0;
+    }
+
+    /*
+     * Scans a channel to its end, one byte per character as in ByteText, then
+     * finishes.
+     */
+    public void scan(ReadableByteChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                append((char) (buffer.get() & 0xFF));
+            }
+            buffer.clear();
+        }
+
+        finish();
+    }
+
+    /*
+     * The number of characters read.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    private boolean extend(char c) {
+        if (edge == null) {
+            Edge e = node.getEdge(c);
+            if (e == null) {
+                return false;
+            }
+            edge = e;
+        } else {
+            int offset = edge.start + length - depth;
+            if (offset == edge.getEnd(s.length()) || s.charAt(offset) != c) {
+                return false;
+            }
+        }
+
+        at = edge.start - depth;
+        length++;
+        descendIfAtEnd();
+        return true;
+    }
+
+    /*
+     * Moves the locus from the match to the match without its first character.
+     */
+    private void dropFirst() {
+        length--;
+        at++;
+        edge = null;
+
+        Node link = node.getSuffixLink();
+        if (node.getIsRoot() || link == null || link.getIsRoot() && depth > 1) {
+            node = root;
+            depth = 0;
+        } else {
+            node = link;
+            depth--;
+        }
+
+        /*
+         * Skip/count: the characters are known to match, so only the first of
+         * each edge is looked at.
+         */
+        while (depth < length) {
+            edge = node.getEdge(s.charAt(at + depth));
+            if (!descendIfAtEnd()) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Moves to the child of the current edge if the match covers the edge.
+     */
+    private boolean descendIfAtEnd() {
+        int edgeLength = edge.getEnd(s.length()) - edge.start;
+        if (edge.child == null || length - depth < edgeLength) {
+            return false;
+        }
+
+        node = edge.child;
+        depth += edgeLength;
+        edge = null;
+        return true;
+    }
+}
@@ -1,6 +1,12 @@
 
 /*
  * Represents either the root of the tree or an internal branch point.
+ *
+ * Thread safety: the getters never modify a node, so a finished tree may be read
+ * by any number of threads at once, provided it was safely published after the
+ * last change, e.g. through a final field, a concurrent collection, or by
+ * starting the readers (or submitting their tasks) afterwards. Building,
+ * appending or annotating a tree while it is being read is not safe.
  */
 import java.util.List;
 
@@ -0,0 +1,58 @@
+/*
+ * A column in pages of an OffHeapStore, resident or spilled.
+ *
+ * Growing only raises the capacity. A page is taken from the store when an id in
+ * it is first written, so the store holds what the tree uses rather than what it
+ * reserved. Unwritten ids read as 0, as in a new array.
+ */
+import java.util.Arrays;
+
+public class OffHeapIntColumn implements IntColumn {
+    private final OffHeapStore store;
+    private OffHeapStore.Page[] pages = new OffHeapStore.Page[0];
+    private int capacity;
+
+    OffHeapIntColumn(OffHeapStore store) {
+        this.store = store;
+    }
+
+    public int get(int index) {
+        OffHeapStore.Page page = pages[index >>> OffHeapStore.PAGE_SHIFT];
+        if (page == null) {
+            return 0;
+        }
+        page.referenced = true;
+        return page.buffer.getInt((index & OffHeapStore.PAGE_INTS - 1) * Integer.BYTES);
+    }
+
+    public void set(int index, int value) {
+        if (index >= capacity) {
+            throw new IndexOutOfBoundsException("index " + index + ", capacity " + capacity);
+        }
+
+        int p = index >>> OffHeapStore.PAGE_SHIFT;
+        OffHeapStore.Page page = pages[p];
+        if (page == null) {
+            page = store.newPage();
+            pages[p] = page;
+        }
+        page.referenced = true;
+        page.buffer.putInt((index & OffHeapStore.PAGE_INTS - 1) * Integer.BYTES, value);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity <= this.capacity) {
+            return;
+        }
+
+        int needed = (int) (((long) capacity + OffHeapStore.PAGE_INTS - 1) >>> OffHeapStore.PAGE_SHIFT);
+        if (needed > pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(needed, pages.length * 2));
+        }
+        this.capacity = capacity;
+    }
+}
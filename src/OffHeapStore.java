@@ -0,0 +1,230 @@
+/*
+ * Pages of off-heap memory for OffHeapIntColumns, under a byte budget, with the
+ * pages beyond it spilled to a file.
+ *
+ * Columns take fixed size pages from the store as ids are first written. Up to
+ * the budget, a page is a direct buffer outside the heap. Past it, the coldest
+ * resident page, chosen by a clock over the pages touched since the hand last
+ * passed them, is copied to the next slot of the spill file and read there from
+ * then on, and its direct buffer is reused for the new page. The spill file is
+ * mapped in regions that double up to REGION_BYTES, as MappedText maps its text,
+ * so it takes a few dozen mappings however much spills. The operating system
+ * keeps the spilled pages read often in its page cache and writes the rest back
+ * to disk, so the process holds at most the budget itself. The heap only holds
+ * one small object per page, so the collector has the same work however large
+ * the tree grows.
+ *
+ * Direct buffers count against -XX:MaxDirectMemorySize, which defaults to the
+ * maximum heap size, so a budget larger than the heap needs that flag raised. A
+ * budget above the limit is rejected rather than failing mid-build. Stores open
+ * at once share the limit, and a closed store's buffers are only freed once its
+ * columns are collected.
+ *
+ * A store is not thread safe, like the columns it backs. Closing it releases the
+ * spill file, after which its columns must not be used. A temporary spill file is
+ * deleted on close. JDK 17 only unmaps a file once its buffers are collected, and
+ * Windows cannot delete a mapped file, so there it is deleted on exit instead.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class OffHeapStore implements Closeable {
+    static final int PAGE_SHIFT = 14;
+    static final int PAGE_INTS = 1 << PAGE_SHIFT;
+    public static final int PAGE_BYTES = PAGE_INTS * Integer.BYTES;
+
+    /*
+     * The first region of the spill file holds FIRST_REGION_PAGES pages, and each
+     * next one as many as all before it, up to REGION_BYTES.
+     */
+    static final int FIRST_REGION_PAGES = 64;
+    static final int REGION_BYTES = 1 << 30;
+
+    static final class Page {
+        ByteBuffer buffer;
+        boolean referenced;
+
+        Page(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private final long budget;
+    private final Path path;
+    private final boolean temporary;
+    private final FileChannel spill;
+
+    /*
+     * The pages in direct buffers, swept by the clock hand.
+     */
+    private final Page[] resident;
+    private int residentCount;
+    private int hand;
+
+    /*
+     * The mapped regions of the spill file and the first slot of each.
+     */
+    private ByteBuffer[] regions = new ByteBuffer[16];
+    private long[] firstSlots = new long[16];
+    private int regionCount;
+    private long mappedSlots;
+
+    private long spilledPages;
+
+    /*
+     * A store spilling to a temporary file.
+     */
+    public OffHeapStore(long budget) throws IOException {
+        this(budget, Files.createTempFile("ukkonen", ".spill"), true);
+    }
+
+    /*
+     * A store spilling to path, which is created or truncated.
+     */
+    public OffHeapStore(long budget, Path path) throws IOException {
+        this(budget, path, false);
+    }
+
+    private OffHeapStore(long budget, Path path, boolean temporary) throws IOException {
+        long limit = maxDirectMemory();
+        if (budget < PAGE_BYTES || budget / PAGE_BYTES * PAGE_BYTES > limit) {
+            if (temporary) {
+                Files.deleteIfExists(path);
+            }
+            if (budget < PAGE_BYTES) {
+                throw new IllegalArgumentException("The budget must be at least one page of " + PAGE_BYTES
+                        + " bytes: " + budget);
+            }
+            throw new IllegalArgumentException("The budget of " + budget + " bytes exceeds the direct memory limit of "
+                    + limit + " bytes; raise it with -XX:MaxDirectMemorySize.");
+        }
+
+        this.budget = budget;
+        this.path = path;
+        this.temporary = temporary;
+        this.spill = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.resident = new Page[(int) Math.min(budget / PAGE_BYTES, Integer.MAX_VALUE - 8)];
+    }
+
+    /*
+     * The most direct buffers may take, as set by -XX:MaxDirectMemorySize or else
+     * the maximum heap size.
+     */
+    static long maxDirectMemory() {
+        com.sun.management.HotSpotDiagnosticMXBean vm = ManagementFactory
+                .getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+        long limit = vm == null ? 0 : Long.parseLong(vm.getVMOption("MaxDirectMemorySize").getValue());
+        return limit > 0 ? limit : Runtime.getRuntime().maxMemory();
+    }
+
+    /*
+     * A new empty column backed by this store.
+     */
+    public OffHeapIntColumn newColumn() {
+        return new OffHeapIntColumn(this);
+    }
+
+    /*
+     * A zeroed page, spilling the coldest resident page if the budget is used up.
+     */
+    Page newPage() {
+        if (residentCount < resident.length) {
+            Page page = new Page(ByteBuffer.allocateDirect(PAGE_BYTES).order(ByteOrder.nativeOrder()));
+            resident[residentCount++] = page;
+            return page;
+        }
+
+        while (resident[hand].referenced) {
+            resident[hand].referenced = false;
+            hand = (hand + 1) % resident.length;
+        }
+
+        Page cold = resident[hand];
+        ByteBuffer buffer = cold.buffer;
+        cold.buffer = slot(spilledPages++);
+        cold.buffer.put(0, buffer, 0, PAGE_BYTES);
+
+        for (int k = 0; k < PAGE_BYTES; k += Long.BYTES) {
+            buffer.putLong(k, 0);
+        }
+        Page page = new Page(buffer);
+        resident[hand] = page;
+        hand = (hand + 1) % resident.length;
+        return page;
+    }
+
+    /*
+     * A page at a slot of the spill file, mapping a new region if it is past the
+     * end.
+     */
+    private ByteBuffer slot(long slot) {
+        if (slot == mappedSlots) {
+            long pages = Math.min(REGION_BYTES / PAGE_BYTES, Math.max(FIRST_REGION_PAGES, mappedSlots));
+            if (regionCount == regions.length) {
+                regions = Arrays.copyOf(regions, regionCount * 2);
+                firstSlots = Arrays.copyOf(firstSlots, regionCount * 2);
+            }
+            try {
+                regions[regionCount] = spill.map(FileChannel.MapMode.READ_WRITE, mappedSlots * PAGE_BYTES,
+                        pages * PAGE_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            firstSlots[regionCount] = mappedSlots;
+            regionCount++;
+            mappedSlots += pages;
+        }
+
+        int r = regionCount - 1;
+        while (firstSlots[r] > slot) {
+            r--;
+        }
+        return regions[r].slice((int) ((slot - firstSlots[r]) * PAGE_BYTES), PAGE_BYTES)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /*
+     * Bytes in direct buffers, at most the budget.
+     */
+    public long getResidentBytes() {
+        return (long) residentCount * PAGE_BYTES;
+    }
+
+    /*
+     * Bytes moved to the spill file.
+     */
+    public long getSpilledBytes() {
+        return spilledPages * PAGE_BYTES;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        regions = null;
+        spill.close();
+        if (temporary) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                path.toFile().deleteOnExit();
+            }
+        }
+    }
+}
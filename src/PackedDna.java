@@ -0,0 +1,114 @@
+/*
+ * A DNA text packed at 2 bits per base.
+ *
+ * The bases a, c, g and t are stored 32 to a long. Any other character, such as
+ * the '$' terminator or the separators of a generalized tree, is kept in a
+ * small sorted side table; inputs are expected to have few of them.
+ * Uppercase bases are not folded, so lowercase the input first.
+ */
+import java.util.Arrays;
+
+public class PackedDna implements CharSequence {
+    private static final char[] BASES = { 'a', 'c', 'g', 't' };
+
+    private final long[] bases;
+    private final int length;
+
+    private final int[] separatorPositions;
+    private final char[] separatorChars;
+    private final int firstSeparator;
+
+    private PackedDna(long[] bases, int length, int[] separatorPositions, char[] separatorChars) {
+        this.bases = bases;
+        this.length = length;
+        this.separatorPositions = separatorPositions;
+        this.separatorChars = separatorChars;
+        this.firstSeparator = separatorPositions.length == 0 ? length : separatorPositions[0];
+    }
+
+    public static PackedDna of(CharSequence s) {
+        long[] bases = new long[(s.length() + 31) >>> 5];
+
+        int separators = 0;
+        int[] separatorPositions = new int[4];
+        char[] separatorChars = new char[4];
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            long code;
+
+            switch (c) {
+                case 'a':
+                    code = 0;
+                    break;
+                case 'c':
+                    code = 1;
+                    break;
+                case 'g':
+                    code = 2;
+                    break;
+                case 't':
+                    code = 3;
+                    break;
+                default:
+                    if (separators == separatorPositions.length) {
+                        separatorPositions = Arrays.copyOf(separatorPositions, separators * 2);
+                        separatorChars = Arrays.copyOf(separatorChars, separators * 2);
+                    }
+                    separatorPositions[separators] = i;
+                    separatorChars[separators] = c;
+                    separators++;
+                    code = 0;
+            }
+
+            bases[i >>> 5] |= code << ((i & 31) << 1);
+        }
+
+        return new PackedDna(bases, s.length(), Arrays.copyOf(separatorPositions, separators),
+                Arrays.copyOf(separatorChars, separators));
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        /*
+         * Positions before the first separator, which is all of them but the last
+         * for a terminated sequence, never need the side table.
+         */
+        if (index >= firstSeparator) {
+            int k = Arrays.binarySearch(separatorPositions, index);
+            if (k >= 0) {
+                return separatorChars[k];
+            }
+        }
+
+        return BASES[(int) (bases[index >>> 5] >>> ((index & 31) << 1)) & 3];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder b = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            b.append(charAt(i));
+        }
+        return b.toString();
+    }
+
+    /*
+     * Bytes held by the packed bases and the separator table.
+     */
+    public long memoryBytes() {
+        return (long) Long.BYTES * bases.length
+                + (long) (Integer.BYTES + Character.BYTES) * separatorPositions.length;
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
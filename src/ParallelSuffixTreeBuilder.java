@@ -0,0 +1,257 @@
+/*
+ * Builds a suffix tree on several threads by partitioning the suffixes.
+ *
+ * Suffixes are bucketed by their first k characters, with k chosen so there are
+ * many more buckets than threads. Each bucket becomes a subtree holding only
+ * its suffixes, built by inserting them one at a time from a private root, and
+ * the buckets run concurrently on a fork-join pool. All suffixes of a bucket
+ * share its prefix, so each subtree hangs from a single edge, and the edges are
+ * grafted under the shared root afterwards, splitting where two buckets share
+ * their first characters.
+ *
+ * The result has the same nodes and edges as SuffixTreeBuilder.build, with the
+ * same Util.suffixes output for node types whose edge order does not depend on
+ * insertion order. Grafting builds no suffix links, so they are computed last
+ * with Util.linkSuffixes, in linear time, and every internal node links to the
+ * node for its path without the first character.
+ *
+ * Insertion compares each suffix from the top of its bucket, so a bucket costs
+ * the sum of its suffixes' branching depths: close to n log n on typical text,
+ * but quadratic on highly repetitive text such as a long run of one character
+ * or a repeated genome segment. The buckets share a count of the characters
+ * they compare, and once it passes WORK_PER_SUFFIX times n log n they stop and
+ * the text is built sequentially in linear time instead, with its links
+ * completed the same way. A repetitive text then costs a bounded head start
+ * more than SuffixTreeBuilder.build.
+ *
+ * The text must end with a unique character so that no suffix is a prefix of
+ * another; other texts are built sequentially instead.
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelSuffixTreeBuilder {
+    /*
+     * Buckets per thread, so that threads that finish early can take more.
+     */
+    static final int BUCKETS_PER_THREAD = 16;
+    static final int MAX_BUCKETS = 1 << 16;
+
+    /*
+     * Characters compared per suffix and per bit of n before giving up on the
+     * buckets. Random and natural text stay well below it.
+     */
+    static final int WORK_PER_SUFFIX = 4;
+
+    public static Node build(CharSequence s, NodeFactory factory) {
+        return build(s, factory, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static Node build(CharSequence s, NodeFactory factory, int parallelism) {
+        int n = s.length();
+        if (!Util.isTerminated(s)) {
+            return SuffixTreeBuilder.build(s, factory);
+        }
+
+        /*
+         * Rank the characters that occur, leaving 0 for the end of the text.
+         */
+        int[] ranks = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < n; i++) {
+            ranks[s.charAt(i)] = 1;
+        }
+        int base = 1;
+        for (int c = 0; c < ranks.length; c++) {
+            if (ranks[c] != 0) {
+                ranks[c] = base++;
+            }
+        }
+
+        int k = 1;
+        int buckets = base;
+        while ((long) buckets * base <= MAX_BUCKETS && buckets < BUCKETS_PER_THREAD * parallelism) {
+            buckets *= base;
+            k++;
+        }
+
+        /*
+         * Counting sort of the suffixes by their first k ranks, which keeps each
+         * bucket in text order.
+         */
+        int[] keys = new int[n];
+        int[] offsets = new int[buckets + 1];
+        for (int j = 0; j < n; j++) {
+            int key = 0;
+            for (int d = 0; d < k; d++) {
+                key = key * base + (j + d < n ? ranks[s.charAt(j + d)] : 0);
+            }
+            keys[j] = key;
+            offsets[key + 1]++;
+        }
+        for (int b = 0; b < buckets; b++) {
+            offsets[b + 1] += offsets[b];
+        }
+        int[] order = new int[n];
+        int[] next = offsets.clone();
+        for (int j = 0; j < n; j++) {
+            order[next[keys[j]]++] = j;
+        }
+        keys = null;
+        next = null;
+
+        Node root = factory.createNode();
+        root.setSuffixLink(root);
+        root.setIsRoot(true);
+
+        long limit = (long) WORK_PER_SUFFIX * n * (64 - Long.numberOfLeadingZeros(n));
+        AtomicLong work = new AtomicLong();
+        List<Callable<Edge>> tasks = new ArrayList<>();
+        for (int b = 0; b < buckets; b++) {
+            int from = offsets[b];
+            int to = offsets[b + 1];
+            if (from < to) {
+                tasks.add(() -> buildBucket(s, factory, root, order, from, to, work, limit));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<Edge>> edges = pool.invokeAll(tasks);
+            if (work.get() > limit) {
+                Node tree = SuffixTreeBuilder.build(s, factory);
+                Util.linkSuffixes(tree, s);
+                return tree;
+            }
+            for (Future<Edge> bucket : edges) {
+                graft(s, factory, root, bucket.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A partition failed to build.", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        Util.linkSuffixes(root, s);
+        return root;
+    }
+
+    /*
+     * Inserts the suffixes order[from..to) under a private root, and returns the
+     * single edge that all of them share, or null once the work of all buckets
+     * passes the limit.
+     */
+    private static Edge buildBucket(CharSequence s, NodeFactory factory, Node root, int[] order, int from, int to,
+            AtomicLong work, long limit) {
+        Node top = factory.createNode();
+
+        for (int k = from; k < to; k++) {
+            if (work.addAndGet(insert(s, factory, root, top, order[k])) > limit) {
+                return null;
+            }
+        }
+
+        for (Edge e : top.getAllEdges()) {
+            if (e != null) {
+                return e;
+            }
+        }
+        throw new IllegalStateException("Empty partition.");
+    }
+
+    /*
+     * Inserts one suffix, and returns the number of characters compared.
+     */
+    private static int insert(CharSequence s, NodeFactory factory, Node root, Node node, int suffix) {
+        int position = suffix;
+
+        while (true) {
+            char c = s.charAt(position);
+            Edge e = node.getEdge(c);
+            if (e == null) {
+                node.setEdge(c, new Edge(position, Edge.OPEN_END));
+                return position - suffix + 1;
+            }
+
+            int end = e.getEnd(s.length());
+            int matched = 1;
+            while (e.start + matched < end && s.charAt(e.start + matched) == s.charAt(position + matched)) {
+                matched++;
+            }
+
+            /*
+             * The whole edge matched, and a unique terminator means it cannot be a
+             * leaf.
+             */
+            if (e.start + matched == end) {
+                node = e.child;
+                position += matched;
+                continue;
+            }
+
+            split(s, factory, root, node, e, matched).setEdge(s.charAt(position + matched),
+                    new Edge(position + matched, Edge.OPEN_END));
+            return position + matched - suffix + 1;
+        }
+    }
+
+    /*
+     * Puts a new node at offset length along the edge e below node, and returns it.
+     */
+    private static Node split(CharSequence s, NodeFactory factory, Node root, Node node, Edge e, int length) {
+        Node internal = factory.createNode();
+        internal.setSuffixLink(root);
+
+        Edge upper = new Edge(e.start, e.start + length);
+        upper.child = internal;
+        node.setEdge(s.charAt(e.start), upper);
+
+        e.start += length;
+        internal.setEdge(s.charAt(e.start), e);
+
+        return internal;
+    }
+
+    /*
+     * Hangs the edge of a bucket below the root, where it meets the edges already
+     * grafted.
+     */
+    private static void graft(CharSequence s, NodeFactory factory, Node root, Edge edge) {
+        Node node = root;
+
+        while (true) {
+            char c = s.charAt(edge.start);
+            Edge e = node.getEdge(c);
+            if (e == null) {
+                node.setEdge(c, edge);
+                return;
+            }
+
+            /*
+             * Buckets differ within their first k characters, so the two edges
+             * diverge before either ends, or e ends at a node first.
+             */
+            int end = e.getEnd(s.length());
+            int matched = 1;
+            while (e.start + matched < end && s.charAt(e.start + matched) == s.charAt(edge.start + matched)) {
+                matched++;
+            }
+
+            edge.start += matched;
+            if (e.start + matched == end) {
+                node = e.child;
+                continue;
+            }
+
+            split(s, factory, root, node, e, matched).setEdge(s.charAt(edge.start), edge);
+            return;
+        }
+    }
+}
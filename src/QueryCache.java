@@ -0,0 +1,291 @@
+/*
+ * Caches the answers of hot patterns against one finished tree.
+ *
+ * An entry keeps the edge where its pattern ends, or that it is absent, so one
+ * lookup serves contains, count and locate. A pattern's positions are added to
+ * its entry the first time it is located. A hit costs a hash of the pattern
+ * instead of a walk from the root.
+ *
+ * The cache is bounded by weight: an entry weighs 1 plus its cached positions.
+ * Positions heavier than a stripe are located anew each time instead.
+ * Eviction is segmented LRU. A new entry goes on probation, and is promoted to
+ * the protected segment, which holds up to PROTECTED of the weight, when it is
+ * hit again. A burst of patterns seen once only cycles through probation, and
+ * cannot flush the patterns that keep coming back.
+ *
+ * Entries are spread over STRIPES independently locked segments by hash, so
+ * threads contend only when they touch the same stripe. A miss walks the tree
+ * outside the lock, and two threads missing the same pattern at once may both
+ * walk it. Counters are LongAdders, so metrics cost no contention either.
+ *
+ * The cache is tied to its tree, which it annotates like QueryEngine (see the
+ * constructor), and the tree must not change afterwards. To replace the tree,
+ * make a new cache and drop the old one with it. Nothing in it is valid for
+ * another tree.
+ */
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class QueryCache {
+    static final int STRIPES = 16;
+
+    /*
+     * The share of a stripe's weight kept for entries hit more than once.
+     */
+    static final double PROTECTED = 0.8;
+
+    private final Node root;
+    private final CharSequence text;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /*
+     * Like QueryEngine, annotates the tree with Util.annotate, which overwrites
+     * the suffix and leaves fields of its edges in place, for anyone else holding
+     * the tree too.
+     *
+     * The text must end with a unique terminator, or count and locate would
+     * silently miss the suffixes without a leaf. Other texts are rejected with an
+     * IllegalArgumentException, as is a maxWeight below STRIPES.
+     */
+    public QueryCache(Node root, CharSequence text, long maxWeight) {
+        if (!Util.isTerminated(text)) {
+            throw new IllegalArgumentException("The text must end with a unique terminator.");
+        }
+        if (maxWeight < STRIPES) {
+            throw new IllegalArgumentException("The weight must be at least " + STRIPES + ": " + maxWeight);
+        }
+        Util.annotate(root, text);
+
+        this.root = root;
+        this.text = text;
+        for (int k = 0; k < STRIPES; k++) {
+            stripes[k] = new Stripe(maxWeight / STRIPES);
+        }
+    }
+
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long entries;
+        public final long weight;
+
+        Stats(long hits, long misses, long evictions, long entries, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.weight = weight;
+        }
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d evictions=%d entries=%d weight=%d hitRate=%.3f", hits, misses,
+                    evictions, entries, weight, hitRate());
+        }
+    }
+
+    public boolean contains(CharSequence pattern) {
+        return pattern.length() == 0 || lookup(pattern).edge != null;
+    }
+
+    public int count(CharSequence pattern) {
+        if (pattern.length() == 0) {
+            return 0;
+        }
+        Edge e = lookup(pattern).edge;
+        return e == null ? 0 : e.leaves;
+    }
+
+    /*
+     * As Util.locate. The array is a copy, so callers may keep or change it.
+     */
+    public int[] locate(CharSequence pattern) {
+        if (pattern.length() == 0) {
+            return new int[0];
+        }
+
+        String key = pattern.toString();
+        Entry entry = lookup(key);
+        int[] positions = entry.positions;
+        if (positions == null) {
+            positions = entry.edge == null ? new int[0] : Util.leavesBelow(entry.edge);
+            stripeOf(key).addPositions(key, entry, positions);
+        }
+        return positions.clone();
+    }
+
+    public Stats stats() {
+        long entries = 0;
+        long weight = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                entries += stripe.probation.size() + stripe.protectedEntries.size();
+                weight += stripe.probationWeight + stripe.protectedWeight;
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries, weight);
+    }
+
+    /*
+     * Drops every entry, keeping the counters.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.probation.clear();
+                stripe.protectedEntries.clear();
+                stripe.probationWeight = 0;
+                stripe.protectedWeight = 0;
+            }
+        }
+    }
+
+    private Entry lookup(CharSequence pattern) {
+        String key = pattern.toString();
+        Stripe stripe = stripeOf(key);
+
+        Entry entry = stripe.get(key);
+        if (entry != null) {
+            hits.increment();
+            return entry;
+        }
+
+        misses.increment();
+        return stripe.putIfAbsent(key, new Entry(Util.find(root, text, key)));
+    }
+
+    private Stripe stripeOf(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ h >>> 16) & (STRIPES - 1)];
+    }
+
+    private static final class Entry {
+        /*
+         * Where the pattern ends, or null if it does not occur.
+         */
+        final Edge edge;
+        volatile int[] positions;
+        long weight = 1;
+
+        Entry(Edge edge) {
+            this.edge = edge;
+        }
+    }
+
+    /*
+     * One segmented LRU. Both maps are in access order, least recent first.
+     */
+    private final class Stripe {
+        final long capacity;
+        final long protectedCapacity;
+        final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        final LinkedHashMap<String, Entry> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+        long probationWeight;
+        long protectedWeight;
+
+        Stripe(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED);
+        }
+
+        synchronized Entry get(String key) {
+            Entry entry = protectedEntries.get(key);
+            if (entry != null) {
+                return entry;
+            }
+
+            entry = probation.remove(key);
+            if (entry == null) {
+                return null;
+            }
+
+            probationWeight -= entry.weight;
+            protectedEntries.put(key, entry);
+            protectedWeight += entry.weight;
+
+            /*
+             * Demoted entries get another chance on probation.
+             */
+            Iterator<Map.Entry<String, Entry>> eldest = protectedEntries.entrySet().iterator();
+            while (protectedWeight > protectedCapacity && protectedEntries.size() > 1) {
+                Map.Entry<String, Entry> demoted = eldest.next();
+                eldest.remove();
+                protectedWeight -= demoted.getValue().weight;
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationWeight += demoted.getValue().weight;
+            }
+            evict();
+
+            return entry;
+        }
+
+        synchronized Entry putIfAbsent(String key, Entry entry) {
+            Entry present = protectedEntries.get(key);
+            if (present == null) {
+                present = probation.get(key);
+            }
+            if (present != null) {
+                return present;
+            }
+
+            probation.put(key, entry);
+            probationWeight += entry.weight;
+            evict();
+            return entry;
+        }
+
+        /*
+         * Positions that would not fit the stripe on their own are not kept, so
+         * that locating a very frequent pattern does not flush the stripe.
+         */
+        synchronized void addPositions(String key, Entry entry, int[] positions) {
+            if (entry.positions != null || entry.weight + positions.length > capacity) {
+                return;
+            }
+            entry.positions = positions;
+
+            long added = positions.length;
+            entry.weight += added;
+            if (protectedEntries.get(key) == entry) {
+                protectedWeight += added;
+            } else if (probation.get(key) == entry) {
+                probationWeight += added;
+            } else {
+                return;
+            }
+            evict();
+        }
+
+        /*
+         * Evicts from probation first, then from the protected segment, until the
+         * stripe fits.
+         */
+        private void evict() {
+            Iterator<Map.Entry<String, Entry>> eldest = probation.entrySet().iterator();
+            while (probationWeight + protectedWeight > capacity && eldest.hasNext()) {
+                probationWeight -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+
+            eldest = protectedEntries.entrySet().iterator();
+            while (probationWeight + protectedWeight > capacity && eldest.hasNext()) {
+                protectedWeight -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Runs batches of queries in parallel against one finished tree.
+ *
+ * The engine annotates the tree and keeps it in final fields, so the tree is
+ * safely published to the pool threads; see Node for the read-only contract.
+ * The tree must not be changed after the engine is created.
+ *
+ * A batch is split in halves on a work-stealing pool until a part is at most
+ * CHUNK patterns, and each pattern writes only its own slot of the result, so
+ * results come back in primitive arrays in the order of the patterns.
+ */
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class QueryEngine {
+    /*
+     * Patterns per task. Lookups take about a microsecond, so smaller parts cost
+     * more in scheduling than they win in balance.
+     */
+    static final int CHUNK = 64;
+
+    private final Node root;
+    private final CharSequence text;
+    private final ForkJoinPool pool;
+
+    public QueryEngine(Node root, CharSequence text) {
+        this(root, text, ForkJoinPool.commonPool());
+    }
+
+    /*
+     * Annotates the tree with Util.annotate, which overwrites the suffix and
+     * leaves fields of its edges in place, for anyone else holding the tree too.
+     *
+     * The text must end with a unique terminator, or suffixes that end inside
+     * the tree have no leaf and count and locate would silently miss them. Other
+     * texts are rejected with an IllegalArgumentException.
+     */
+    public QueryEngine(Node root, CharSequence text, ForkJoinPool pool) {
+        if (!Util.isTerminated(text)) {
+            throw new IllegalArgumentException("The text must end with a unique terminator.");
+        }
+        Util.annotate(root, text);
+
+        this.root = root;
+        this.text = text;
+        this.pool = pool;
+    }
+
+    /*
+     * The occurrences of a batch, concatenated: those of pattern k are
+     * positions[offsets[k]] up to positions[offsets[k + 1]], in tree order.
+     */
+    public static class Locations {
+        public final int[] offsets;
+        public final int[] positions;
+
+        Locations(int[] offsets, int[] positions) {
+            this.offsets = offsets;
+            this.positions = positions;
+        }
+
+        public int count(int pattern) {
+            return offsets[pattern + 1] - offsets[pattern];
+        }
+    }
+
+    interface Query {
+        void run(int k);
+    }
+
+    public boolean[] contains(CharSequence[] patterns) {
+        boolean[] found = new boolean[patterns.length];
+        run(patterns.length, k -> found[k] = Util.contains(root, text, patterns[k]));
+        return found;
+    }
+
+    public int[] count(CharSequence[] patterns) {
+        int[] counts = new int[patterns.length];
+        run(patterns.length, k -> counts[k] = Util.count(root, text, patterns[k]));
+        return counts;
+    }
+
+    public Locations locate(CharSequence[] patterns) {
+        int[][] each = new int[patterns.length][];
+        run(patterns.length, k -> each[k] = Util.locate(root, text, patterns[k]));
+
+        int[] offsets = new int[patterns.length + 1];
+        for (int k = 0; k < patterns.length; k++) {
+            offsets[k + 1] = offsets[k] + each[k].length;
+        }
+        int[] positions = new int[offsets[patterns.length]];
+        for (int k = 0; k < patterns.length; k++) {
+            System.arraycopy(each[k], 0, positions, offsets[k], each[k].length);
+        }
+        return new Locations(offsets, positions);
+    }
+
+    /*
+     * Runs query for 0..count on the pool and waits for all of them. Small
+     * batches run on the calling thread.
+     */
+    private void run(int count, Query query) {
+        if (count <= CHUNK) {
+            for (int k = 0; k < count; k++) {
+                query.run(k);
+            }
+            return;
+        }
+        pool.invoke(new Part(query, 0, count));
+    }
+
+    private static final class Part extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Query query;
+        private final int from;
+        private final int to;
+
+        Part(Query query, int from, int to) {
+            this.query = query;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int k = from; k < to; k++) {
+                    query.run(k);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Part(query, from, middle), new Part(query, middle, to));
+        }
+    }
+}
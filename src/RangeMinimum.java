@@ -0,0 +1,99 @@
+/*
+ * Constant time range minimum queries over a fixed int array, in linear space.
+ *
+ * The array is cut into blocks of 64. A sparse table over the block minima
+ * answers the whole blocks in a range with two lookups. Inside a block, every
+ * position keeps a 64-bit mask of the stack of running minima ending there, so
+ * the minimum of a partial block is the highest bit of one masked word. The
+ * table holds n / 64 * log(n / 64) ints, and the masks one long per value.
+ *
+ * Ties go to the leftmost position.
+ */
+public class RangeMinimum {
+    private static final int BLOCK = 64;
+
+    private final int[] values;
+    private final long[] masks;
+
+    /*
+     * table[level][b] is the position of the minimum of blocks b up to
+     * b + 2^level.
+     */
+    private final int[][] table;
+
+    public RangeMinimum(int[] values) {
+        this.values = values;
+        int n = values.length;
+
+        /*
+         * Bit j of masks[i] is set if position i - j is on the stack, whose values
+         * increase from the bottom. Equal values stay, so the leftmost wins.
+         */
+        masks = new long[n];
+        long mask = 0;
+        for (int i = 0; i < n; i++) {
+            mask = i % BLOCK == 0 ? 0 : mask << 1;
+            while (mask != 0 && values[i] < values[i - Long.numberOfTrailingZeros(mask)]) {
+                mask &= mask - 1;
+            }
+            mask |= 1;
+            masks[i] = mask;
+        }
+
+        int blocks = (n + BLOCK - 1) / BLOCK;
+        int levels = blocks == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(blocks);
+        table = new int[levels][];
+        if (levels > 0) {
+            table[0] = new int[blocks];
+            for (int b = 0; b < blocks; b++) {
+                table[0][b] = inBlock(b * BLOCK, Math.min(n, (b + 1) * BLOCK) - 1);
+            }
+        }
+        for (int level = 1; level < levels; level++) {
+            int width = 1 << level;
+            table[level] = new int[blocks - width + 1];
+            for (int b = 0; b + width <= blocks; b++) {
+                table[level][b] = better(table[level - 1][b], table[level - 1][b + width / 2]);
+            }
+        }
+    }
+
+    /*
+     * The position of the minimum of values[from..to], both inclusive.
+     */
+    public int argMin(int from, int to) {
+        if (from < 0 || to >= values.length || from > to) {
+            throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + values.length);
+        }
+
+        int first = from / BLOCK;
+        int last = to / BLOCK;
+        if (first == last) {
+            return inBlock(from, to);
+        }
+
+        int best = better(inBlock(from, first * BLOCK + BLOCK - 1), inBlock(last * BLOCK, to));
+        if (first + 1 < last) {
+            int level = 31 - Integer.numberOfLeadingZeros(last - first - 1);
+            best = better(best, better(table[level][first + 1], table[level][last - (1 << level)]));
+        }
+        return best;
+    }
+
+    public int min(int from, int to) {
+        return values[argMin(from, to)];
+    }
+
+    /*
+     * The oldest entry of the stack at to that is not before from.
+     */
+    private int inBlock(int from, int to) {
+        int width = to - from + 1;
+        long mask = width == BLOCK ? masks[to] : masks[to] & ((1L << width) - 1);
+        return to - (63 - Long.numberOfLeadingZeros(mask));
+    }
+
+    private int better(int a, int b) {
+        return values[a] < values[b] || values[a] == values[b] && a < b ? a : b;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Finds the maximal, supermaximal and tandem repeats of a text, streaming each
+ * with its positions as it is found.
+ *
+ * All three read a FrozenSuffixTree, where the leaves below a node are one
+ * contiguous run in suffix array order. One array of the suffixes in that
+ * order gives the positions of any node as a slice, so nothing is copied per
+ * repeat and a listener can stream genome scale output.
+ *
+ * A repeat is the label of an internal node: it occurs at the node's leaves and
+ * is followed by different characters, so it is right maximal. It is maximal
+ * if it is also left diverse, that is if two of its occurrences are preceded
+ * by different characters, or one starts the text (Gusfield 7.12). Diversity
+ * is propagated up the tree in one pass over the ids from last to first, where
+ * every node comes after its children, so the search is linear.
+ *
+ * A maximal repeat is supermaximal if it occurs in no other maximal repeat.
+ * That holds exactly when its node's children are all leaves, each preceded by
+ * a different character.
+ *
+ * A tandem repeat is a square aa at i, and is branching if s[i] differs from
+ * s[i + 2|a|], so it cannot be rotated one step right. Every square is a
+ * branching one rotated left. Both halves of a branching square start with a
+ * and then differ, so their leaves are below different children of the node
+ * for a. Stoye and Gusfield's test finds them from the leaves outside the
+ * largest child only, looking |a| ahead and behind, which is O(n log n).
+ */
+import java.io.IOException;
+import java.util.Arrays;
+
+public class Repeats {
+    /*
+     * Receives one repeat: a string of the given length at the count positions
+     * positions[from, from + count). The array is shared and read-only, and
+     * holds valid positions only during the call.
+     */
+    public interface Listener {
+        void repeat(int[] positions, int from, int length, int count) throws IOException;
+    }
+
+    private static final int UNSET = -1;
+    private static final int DIVERSE = -2;
+
+    private final FrozenSuffixTree tree;
+    private final CharSequence s;
+
+    /*
+     * The suffixes of the leaves by id, that is in suffix array order, and for
+     * every id the number of leaves before it.
+     */
+    private final int[] order;
+    private final int[] before;
+
+    public Repeats(FrozenSuffixTree tree) {
+        this.tree = tree;
+        this.s = tree.getText();
+
+        int size = tree.size();
+        order = new int[s.length()];
+        before = new int[size + 1];
+        int leaves = 0;
+        for (int id = 0; id < size; id++) {
+            before[id] = leaves;
+            if (tree.isLeaf(id)) {
+                order[leaves++] = tree.getSuffix(id);
+            }
+        }
+        before[size] = leaves;
+    }
+
+    /*
+     * Reports every maximal repeat at least minLength long occurring at least
+     * minCount times, children before parents.
+     */
+    public void maximal(int minLength, int minCount, Listener listener) throws IOException {
+        int size = tree.size();
+
+        /*
+         * The character before every occurrence of an id, or DIVERSE if they
+         * differ. The first suffix is preceded by nothing, which differs from
+         * everything.
+         */
+        int[] left = new int[size];
+        Arrays.fill(left, UNSET);
+
+        for (int id = size - 1; id > FrozenSuffixTree.ROOT; id--) {
+            if (tree.isLeaf(id)) {
+                int suffix = tree.getSuffix(id);
+                left[id] = suffix == 0 ? DIVERSE : s.charAt(suffix - 1);
+            } else if (left[id] == DIVERSE) {
+                report(id, tree.getDepth(id), minLength, minCount, listener);
+            }
+
+            int parent = tree.getParent(id);
+            if (left[parent] == UNSET) {
+                left[parent] = left[id];
+            } else if (left[parent] != left[id]) {
+                left[parent] = DIVERSE;
+            }
+        }
+    }
+
+    /*
+     * Reports every supermaximal repeat at least minLength long occurring at
+     * least minCount times, in suffix array order.
+     */
+    public void supermaximal(int minLength, int minCount, Listener listener) throws IOException {
+        /*
+         * Characters seen below the current id, marked with the id.
+         */
+        int[] seen = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(seen, FrozenSuffixTree.NONE);
+
+        for (int id = FrozenSuffixTree.ROOT + 1; id < tree.size(); id++) {
+            if (tree.isLeaf(id) || tree.getDepth(id) < minLength || count(id) < minCount) {
+                continue;
+            }
+
+            boolean distinct = true;
+            for (int child = id + 1; distinct && child < tree.getNext(id); child = tree.getNext(child)) {
+                if (!tree.isLeaf(child)) {
+                    distinct = false;
+                    continue;
+                }
+                int suffix = tree.getSuffix(child);
+                if (suffix > 0) {
+                    char c = s.charAt(suffix - 1);
+                    distinct = seen[c] != id;
+                    seen[c] = id;
+                }
+            }
+
+            if (distinct) {
+                report(id, tree.getDepth(id), minLength, minCount, listener);
+            }
+        }
+    }
+
+    /*
+     * Reports the branching tandem repeats at least minLength long, that is
+     * twice the length of their half. Each report holds the squares of one half
+     * that occur at least minCount times, by increasing position.
+     */
+    public void tandem(int minLength, int minCount, Listener listener) throws IOException {
+        int[] found = new int[16];
+
+        for (int id = FrozenSuffixTree.ROOT + 1; id < tree.size(); id++) {
+            int half = tree.getDepth(id);
+            if (tree.isLeaf(id) || 2L * half < minLength) {
+                continue;
+            }
+
+            int largest = id + 1;
+            for (int child = id + 1; child < tree.getNext(id); child = tree.getNext(child)) {
+                if (count(child) > count(largest)) {
+                    largest = child;
+                }
+            }
+
+            int squares = 0;
+            for (int k = before[id]; k < before[tree.getNext(id)]; k++) {
+                if (k == before[largest]) {
+                    k = before[tree.getNext(largest)] - 1;
+                    continue;
+                }
+
+                /*
+                 * A square whose first half is here, and one whose second half
+                 * is here. The latter is only taken when its first half is in the
+                 * largest child, since it is found from that half otherwise.
+                 */
+                int i = order[k];
+                if (i + half < s.length() && below(id, i + half) && s.charAt(i) != s.charAt(i + 2 * half)) {
+                    found = add(found, squares++, i);
+                }
+                int j = i - half;
+                if (j >= 0 && below(largest, j) && s.charAt(j) != s.charAt(i + half)) {
+                    found = add(found, squares++, j);
+                }
+            }
+
+            if (squares >= minCount && squares > 0) {
+                Arrays.sort(found, 0, squares);
+                listener.repeat(found, 0, 2 * half, squares);
+            }
+        }
+    }
+
+    private void report(int id, int length, int minLength, int minCount, Listener listener) throws IOException {
+        int count = count(id);
+        if (length >= minLength && count >= minCount) {
+            listener.repeat(order, before[id], length, count);
+        }
+    }
+
+    /*
+     * The number of leaves at or below id.
+     */
+    private int count(int id) {
+        return before[tree.getNext(id)] - before[id];
+    }
+
+    /*
+     * Is the leaf of a suffix at or below id?
+     */
+    private boolean below(int id, int suffix) {
+        int leaf = tree.getLeaf(suffix);
+        return leaf >= id && leaf < tree.getNext(id);
+    }
+
+    private static int[] add(int[] values, int size, int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        return values;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * A suffix tree over the last window characters of an unbounded stream.
+ *
+ * Characters are added by Ukkonen's algorithm, with suffix links, one phase per
+ * character. Once the window is full, every append first deletes the oldest
+ * suffix, after Larsson ("Extended application of suffix trees to data
+ * compression", 1996):
+ *
+ * - The oldest suffix is always a leaf, since nothing later can repeat it.
+ * - If the active point lies on that leaf's edge, the longest implicit suffix
+ *   is a prefix of it. The leaf is kept and relabeled as that suffix instead,
+ *   which makes it explicit, and the active point moves on as if it had been
+ *   inserted.
+ * - Otherwise the leaf is removed. A parent left with one child is merged into
+ *   that child's edge. No suffix link can point at such a parent, as a node
+ *   linking to it would have at least two children it lacks.
+ *
+ * So the tree always holds exactly the substrings of the window.
+ *
+ * Nodes live in int columns like ArenaTree, and deleted ids are reused, so
+ * there are at most 2 * window + 1 of them. Positions are indexes into a text
+ * buffer of 2 * window characters. When it fills, the window is moved to the
+ * front of the buffer. Before that, every internal edge is relabeled from a leaf
+ * below it, because an edge may still point at an occurrence that has left the
+ * window. This costs O(window) once per window characters, so appends stay
+ * amortized constant time for a fixed alphabet.
+ */
+import java.util.Arrays;
+
+public class SlidingWindowSuffixTree {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    /*
+     * The depth of a leaf, whose edge runs to the end of the text.
+     */
+    private static final int LEAF = Integer.MAX_VALUE;
+
+    private final int window;
+
+    /*
+     * The text, from buffer[0] which is the stream index base. The window is
+     * buffer[tail..front).
+     */
+    private final char[] buffer;
+    private long base;
+    private int tail;
+    private int front;
+
+    /*
+     * Per id: the start of the edge entering it, the string depth of the node
+     * (LEAF for leaves), its parent, children and suffix link. Free ids are
+     * chained through nextSibling.
+     */
+    private final int[] start;
+    private final int[] depth;
+    private final int[] parent;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] suffixLink;
+    private int size;
+    private int free = NONE;
+
+    /*
+     * The leaf of every explicit suffix, by stream index modulo window.
+     */
+    private final int[] leaves;
+
+    /*
+     * The active point: the locus of the longest implicit suffix, which is the
+     * last remainder characters. It is activeLength characters below
+     * activeNode, along the edge starting with buffer[front - activeLength].
+     */
+    private int activeNode = ROOT;
+    private int activeLength;
+    private int remainder;
+
+    /*
+     * Scratch for relabeling, one stamp per id.
+     */
+    private final int[] relabeled;
+    private int epoch;
+
+    public SlidingWindowSuffixTree(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("The window must hold at least one character.");
+        }
+        this.window = window;
+
+        buffer = new char[2 * window];
+
+        int capacity = 2 * window + 1;
+        start = new int[capacity];
+        depth = new int[capacity];
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        suffixLink = new int[capacity];
+        relabeled = new int[capacity];
+        leaves = new int[window];
+
+        int root = newId(0, 0, NONE);
+        suffixLink[root] = root;
+    }
+
+    public SlidingWindowSuffixTree append(CharSequence chars) {
+        for (int k = 0; k < chars.length(); k++) {
+            append(chars.charAt(k));
+        }
+        return this;
+    }
+
+    public SlidingWindowSuffixTree append(char c) {
+        if (front - tail == window) {
+            removeOldest();
+        }
+        if (front == buffer.length) {
+            compact();
+        }
+
+        int pos = front;
+        buffer[front++] = c;
+        remainder++;
+        int lastCreated = NONE;
+
+        while (remainder > 0) {
+            int child = getChild(activeNode, buffer[pos - activeLength]);
+
+            if (child == NONE) {
+                addLeaf(activeNode, pos, pos - remainder + 1);
+                if (lastCreated != NONE) {
+                    suffixLink[lastCreated] = activeNode;
+                    lastCreated = NONE;
+                }
+            } else {
+                /*
+                 * Skip/count down to the edge holding the active point.
+                 */
+                int length = edgeLength(child);
+                if (activeLength >= length) {
+                    activeNode = child;
+                    activeLength -= length;
+                    continue;
+                }
+
+                /*
+                 * The suffix is already there: it stays implicit, and so do all
+                 * shorter ones.
+                 */
+                if (buffer[start[child] + activeLength] == c) {
+                    if (lastCreated != NONE) {
+                        suffixLink[lastCreated] = activeNode;
+                    }
+                    activeLength++;
+                    break;
+                }
+
+                int split = newId(start[child], depth[activeNode] + activeLength, activeNode);
+                replaceChild(activeNode, child, split);
+                start[child] += activeLength;
+                parent[child] = split;
+                addChild(split, child);
+                addLeaf(split, pos, pos - remainder + 1);
+
+                if (lastCreated != NONE) {
+                    suffixLink[lastCreated] = split;
+                }
+                lastCreated = split;
+            }
+
+            remainder--;
+            moveToNextSuffix();
+        }
+
+        return this;
+    }
+
+    /*
+     * Moves the active point from the longest implicit suffix to the next
+     * shorter one.
+     */
+    private void moveToNextSuffix() {
+        if (activeNode == ROOT) {
+            if (activeLength > 0) {
+                activeLength--;
+            }
+        } else {
+            activeNode = suffixLink[activeNode];
+        }
+    }
+
+    /*
+     * Walks the active point down to the deepest node above it.
+     */
+    private void canonize() {
+        while (activeLength > 0) {
+            int child = getChild(activeNode, buffer[front - activeLength]);
+            int length = edgeLength(child);
+            if (activeLength < length) {
+                return;
+            }
+            activeNode = child;
+            activeLength -= length;
+        }
+    }
+
+    /*
+     * Deletes the suffix starting at tail, the longest in the tree.
+     */
+    private void removeOldest() {
+        int leaf = leaves[slot(base + tail)];
+        int node = parent[leaf];
+        tail++;
+
+        if (remainder > 0) {
+            canonize();
+
+            if (activeNode == node && activeLength > 0
+                    && getChild(node, buffer[front - activeLength]) == leaf) {
+                /*
+                 * The leaf now ends at the active point, as the longest implicit
+                 * suffix, which becomes explicit.
+                 */
+                int suffix = front - remainder;
+                start[leaf] = front - activeLength;
+                leaves[slot(base + suffix)] = leaf;
+
+                remainder--;
+                moveToNextSuffix();
+                return;
+            }
+        }
+
+        removeChild(node, leaf);
+        release(leaf);
+
+        if (node == ROOT || nextSibling[firstChild[node]] != NONE) {
+            return;
+        }
+
+        /*
+         * Merge the node into the edge of its only child.
+         */
+        int child = firstChild[node];
+        int above = parent[node];
+        int length = depth[node] - depth[above];
+
+        start[child] -= length;
+        parent[child] = above;
+        replaceChild(above, node, child);
+        nextSibling[node] = NONE;
+
+        if (activeNode == node) {
+            activeNode = above;
+            activeLength += length;
+        }
+
+        release(node);
+    }
+
+    /*
+     * Moves the window to the start of the buffer, first pointing every internal
+     * edge at an occurrence inside the window.
+     */
+    private void compact() {
+        epoch++;
+        relabeled[ROOT] = epoch;
+
+        for (int suffix = tail; suffix < front - remainder; suffix++) {
+            int leaf = leaves[slot(base + suffix)];
+            for (int id = parent[leaf]; relabeled[id] != epoch; id = parent[id]) {
+                start[id] = suffix + depth[parent[id]];
+                relabeled[id] = epoch;
+            }
+        }
+
+        int shift = tail;
+        for (int id = 1; id < size; id++) {
+            if (parent[id] != NONE) {
+                start[id] -= shift;
+            }
+        }
+
+        System.arraycopy(buffer, tail, buffer, 0, front - tail);
+        base += shift;
+        front -= shift;
+        tail = 0;
+    }
+
+    /*
+     * Is query a substring of the current window?
+     */
+    public boolean contains(CharSequence query) {
+        int node = ROOT;
+        int i = 0;
+
+        while (i < query.length()) {
+            int child = getChild(node, query.charAt(i));
+            if (child == NONE) {
+                return false;
+            }
+
+            int end = start[child] + edgeLength(child);
+            int j = start[child] + 1;
+            i++;
+
+            while (i < query.length() && j < end) {
+                if (buffer[j] != query.charAt(i)) {
+                    return false;
+                }
+                i++;
+                j++;
+            }
+
+            node = child;
+        }
+
+        return true;
+    }
+
+    /*
+     * The number of characters in the window.
+     */
+    public int length() {
+        return front - tail;
+    }
+
+    /*
+     * The stream index of the first character in the window.
+     */
+    public long getStart() {
+        return base + tail;
+    }
+
+    public String getText() {
+        return new String(buffer, tail, front - tail);
+    }
+
+    /*
+     * The number of node ids in use, leaves included, which is at most
+     * 2 * window + 1.
+     */
+    public int getNodeCount() {
+        int count = size;
+        for (int id = free; id != NONE; id = nextSibling[id]) {
+            count--;
+        }
+        return count;
+    }
+
+    private int slot(long suffix) {
+        return (int) (suffix % window);
+    }
+
+    private int edgeLength(int id) {
+        return depth[id] == LEAF ? front - start[id] : depth[id] - depth[parent[id]];
+    }
+
+    private void addLeaf(int node, int edgeStart, int suffix) {
+        int leaf = newId(edgeStart, LEAF, node);
+        addChild(node, leaf);
+        leaves[slot(base + suffix)] = leaf;
+    }
+
+    private int newId(int edgeStart, int nodeDepth, int parentId) {
+        int id;
+        if (free != NONE) {
+            id = free;
+            free = nextSibling[id];
+        } else {
+            id = size++;
+        }
+
+        start[id] = edgeStart;
+        depth[id] = nodeDepth;
+        parent[id] = parentId;
+        firstChild[id] = NONE;
+        nextSibling[id] = NONE;
+        suffixLink[id] = ROOT;
+        return id;
+    }
+
+    private void release(int id) {
+        parent[id] = NONE;
+        firstChild[id] = NONE;
+        nextSibling[id] = free;
+        free = id;
+    }
+
+    private int getChild(int node, char c) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (buffer[start[child]] == c) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    private void addChild(int node, int child) {
+        nextSibling[child] = firstChild[node];
+        firstChild[node] = child;
+    }
+
+    private void removeChild(int node, int child) {
+        if (firstChild[node] == child) {
+            firstChild[node] = nextSibling[child];
+        } else {
+            int previous = firstChild[node];
+            while (nextSibling[previous] != child) {
+                previous = nextSibling[previous];
+            }
+            nextSibling[previous] = nextSibling[child];
+        }
+        nextSibling[child] = NONE;
+    }
+
+    private void replaceChild(int node, int child, int replacement) {
+        nextSibling[replacement] = nextSibling[child];
+        if (firstChild[node] == child) {
+            firstChild[node] = replacement;
+        } else {
+            int previous = firstChild[node];
+            while (nextSibling[previous] != child) {
+                previous = nextSibling[previous];
+            }
+            nextSibling[previous] = replacement;
+        }
+        nextSibling[child] = NONE;
+    }
+
+    @Override
+    public String toString() {
+        return "window " + Arrays.toString(new long[] { getStart(), getStart() + length() });
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * A substring of an indexed text given by position, so results do not copy the
+ * text.
+ */
+public class Span {
+    public final int start;
+    public final int length;
+
+    public Span(int start, int length) {
+        this.start = start;
+        this.length = length;
+    }
+
+    public CharSequence of(CharSequence text) {
+        return text.subSequence(start, start + length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Span)) {
+            return false;
+        }
+        Span other = (Span) o;
+        return start == other.start && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start + length;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + start + ", " + length + ")";
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Longest repeated and longest common substrings, read off the tree.
+ *
+ * Both are the deepest internal node, by string depth, that satisfies a
+ * condition: any internal node occurs at least twice, and a node of a
+ * generalized tree is common to the documents that have a suffix below it.
+ * The path of a node ends where its incoming edge ends, so it is reported as a
+ * Span of the text without looking for a leaf.
+ *
+ * The levels of the tree nearest the root are split into fork-join tasks, and
+ * everything below them is walked with an explicit stack on the worker that
+ * took the task. Ties go to the smallest start, so the answer does not depend
+ * on how the work was split.
+ */
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.RecursiveTask;
+
+public class Substrings {
+    /*
+     * Levels below the root that are forked. With branching factor b, this makes
+     * up to b^FORK_LEVELS tasks.
+     */
+    static final int FORK_LEVELS = 3;
+
+    private static final Span NONE = new Span(0, 0);
+
+    /*
+     * The longest substring occurring at least twice, possibly overlapping. A
+     * length of 0 means no character repeats. The span indexes the text the tree
+     * was built from, which the search itself never reads.
+     */
+    public static Span longestRepeated(Node root) {
+        return new DeepestNode(root, 0, 0, 0).invoke();
+    }
+
+    /*
+     * The longest substring common to every document of the tree. A length of 0
+     * means there is none, or no documents.
+     */
+    public static Span longestCommon(GeneralizedSuffixTree tree) {
+        if (tree.getDocumentCount() == 0) {
+            return NONE;
+        }
+        return new DeepestCommonNode(tree, tree.getRoot(), 0, 0, 0).invoke().best;
+    }
+
+    /*
+     * The deeper span, or the earlier for equal depths.
+     */
+    private static Span better(Span a, Span b) {
+        if (a.length != b.length) {
+            return a.length > b.length ? a : b;
+        }
+        return a.start <= b.start ? a : b;
+    }
+
+    private static Span spanOf(int end, int depth) {
+        return depth == 0 ? NONE : new Span(end - depth, depth);
+    }
+
+    private static final class DeepestNode extends RecursiveTask<Span> {
+        private static final long serialVersionUID = 1L;
+
+        private final Node node;
+        private final int depth;
+        private final int end;
+        private final int level;
+
+        DeepestNode(Node node, int depth, int end, int level) {
+            this.node = node;
+            this.depth = depth;
+            this.end = end;
+            this.level = level;
+        }
+
+        @Override
+        protected Span compute() {
+            if (level >= FORK_LEVELS) {
+                return walk();
+            }
+
+            Span best = spanOf(end, depth);
+
+            DeepestNode[] tasks = new DeepestNode[node.getAllEdges().size()];
+            int forked = 0;
+            for (Edge e : node.getAllEdges()) {
+                if (e != null && e.child != null) {
+                    tasks[forked] = new DeepestNode(e.child, depth + e.end - e.start, e.end, level + 1);
+                    tasks[forked++].fork();
+                }
+            }
+            for (int k = forked - 1; k >= 0; k--) {
+                best = better(best, tasks[k].join());
+            }
+
+            return best;
+        }
+
+        /*
+         * Depth first over the internal nodes of the subtree.
+         */
+        private Span walk() {
+            int bestDepth = depth;
+            int bestEnd = end;
+
+            Node[] nodes = new Node[16];
+            int[] depths = new int[16];
+            int size = 0;
+            nodes[size] = node;
+            depths[size] = depth;
+            size++;
+
+            while (size > 0) {
+                size--;
+                Node top = nodes[size];
+                int topDepth = depths[size];
+
+                for (Edge e : top.getAllEdges()) {
+                    if (e == null || e.child == null) {
+                        continue;
+                    }
+
+                    int childDepth = topDepth + e.end - e.start;
+                    if (childDepth > bestDepth || childDepth == bestDepth && e.end < bestEnd) {
+                        bestDepth = childDepth;
+                        bestEnd = e.end;
+                    }
+
+                    if (size == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, size * 2);
+                        depths = Arrays.copyOf(depths, size * 2);
+                    }
+                    nodes[size] = e.child;
+                    depths[size] = childDepth;
+                    size++;
+                }
+            }
+
+            return spanOf(bestEnd, bestDepth);
+        }
+    }
+
+    /*
+     * The documents below a subtree, and the deepest node in it common to all.
+     */
+    private static final class Common {
+        final BitSet documents;
+        final Span best;
+
+        Common(BitSet documents, Span best) {
+            this.documents = documents;
+            this.best = best;
+        }
+    }
+
+    private static final class DeepestCommonNode extends RecursiveTask<Common> {
+        private static final long serialVersionUID = 1L;
+
+        private final GeneralizedSuffixTree tree;
+        private final Node node;
+        private final int depth;
+        private final int end;
+        private final int level;
+
+        DeepestCommonNode(GeneralizedSuffixTree tree, Node node, int depth, int end, int level) {
+            this.tree = tree;
+            this.node = node;
+            this.depth = depth;
+            this.end = end;
+            this.level = level;
+        }
+
+        @Override
+        protected Common compute() {
+            if (level >= FORK_LEVELS) {
+                return walk();
+            }
+
+            BitSet documents = new BitSet(tree.getDocumentCount());
+            Span best = NONE;
+
+            DeepestCommonNode[] tasks = new DeepestCommonNode[node.getAllEdges().size()];
+            int forked = 0;
+            for (Edge e : node.getAllEdges()) {
+                if (e == null) {
+                    continue;
+                }
+                if (e.child == null) {
+                    documents.set(leafDocument(e));
+                } else {
+                    tasks[forked] = new DeepestCommonNode(tree, e.child, depth + e.end - e.start, e.end, level + 1);
+                    tasks[forked++].fork();
+                }
+            }
+            addTerminals(node, documents);
+
+            for (int k = forked - 1; k >= 0; k--) {
+                Common child = tasks[k].join();
+                documents.or(child.documents);
+                best = better(best, child.best);
+            }
+
+            if (documents.cardinality() == tree.getDocumentCount()) {
+                best = better(best, spanOf(end, depth));
+            }
+            return new Common(documents, best);
+        }
+
+        /*
+         * Lists the internal nodes of the subtree in preorder, then visits them in
+         * reverse, so every node comes after its descendants and can take the
+         * union of their documents. A node's set exists only from when its first
+         * child is done until it is merged into its parent.
+         */
+        private Common walk() {
+            Node[] nodes = new Node[16];
+            int[] parents = new int[16];
+            int[] depths = new int[16];
+            int[] ends = new int[16];
+            int count = 0;
+
+            nodes[count] = node;
+            parents[count] = -1;
+            depths[count] = depth;
+            ends[count] = end;
+            count++;
+
+            for (int k = 0; k < count; k++) {
+                for (Edge e : nodes[k].getAllEdges()) {
+                    if (e == null || e.child == null) {
+                        continue;
+                    }
+
+                    if (count == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, count * 2);
+                        parents = Arrays.copyOf(parents, count * 2);
+                        depths = Arrays.copyOf(depths, count * 2);
+                        ends = Arrays.copyOf(ends, count * 2);
+                    }
+                    nodes[count] = e.child;
+                    parents[count] = k;
+                    depths[count] = depths[k] + e.end - e.start;
+                    ends[count] = e.end;
+                    count++;
+                }
+            }
+
+            BitSet[] documents = new BitSet[count];
+            int bestDepth = 0;
+            int bestEnd = 0;
+
+            for (int k = count - 1; k >= 0; k--) {
+                if (documents[k] == null) {
+                    documents[k] = new BitSet(tree.getDocumentCount());
+                }
+                for (Edge e : nodes[k].getAllEdges()) {
+                    if (e != null && e.child == null) {
+                        documents[k].set(leafDocument(e));
+                    }
+                }
+                addTerminals(nodes[k], documents[k]);
+
+                if (documents[k].cardinality() == tree.getDocumentCount()
+                        && (depths[k] > bestDepth || depths[k] == bestDepth && ends[k] < bestEnd)) {
+                    bestDepth = depths[k];
+                    bestEnd = ends[k];
+                }
+
+                if (k > 0) {
+                    int parent = parents[k];
+                    if (documents[parent] == null) {
+                        documents[parent] = documents[k];
+                    } else {
+                        documents[parent].or(documents[k]);
+                    }
+                    documents[k] = null;
+                }
+            }
+
+            return new Common(documents[0], spanOf(bestEnd, bestDepth));
+        }
+
+        /*
+         * A leaf ends one past the terminator of its document.
+         */
+        private int leafDocument(Edge leaf) {
+            return tree.ordinalAt(leaf.end - 1);
+        }
+
+        private void addTerminals(Node node, BitSet documents) {
+            for (int suffix : tree.getTerminals(node)) {
+                documents.set(tree.ordinalAt(suffix));
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The suffix array and LCP array of a text, read off its suffix tree.
+ *
+ * sa[i] is the start of the i-th smallest suffix, ordered by char value, and
+ * lcp[i] is the length of the longest common prefix of the suffixes at sa[i - 1]
+ * and sa[i], with lcp[0] = 0.
+ *
+ * One depth first walk visits the children of each node in order of their first
+ * character, which is sorted per node because getAllEdges has no defined order
+ * (MapNode iterates its HashMap). The leaves then come out in suffix order, and
+ * the LCP of two neighbouring leaves is the shallowest node the walk passed
+ * through between them. For a fixed alphabet this is linear in the text.
+ *
+ * The text must end with a unique terminator, so that every suffix is a leaf.
+ */
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class SuffixArray {
+    public final int[] sa;
+    public final int[] lcp;
+
+    private SuffixArray(int[] sa, int[] lcp) {
+        this.sa = sa;
+        this.lcp = lcp;
+    }
+
+    /*
+     * Receives the suffixes in order.
+     */
+    interface Sink {
+        void accept(int suffix, int lcp) throws IOException;
+    }
+
+    public static SuffixArray of(Node root, CharSequence s) {
+        int[] sa = new int[s.length()];
+        int[] lcp = new int[s.length()];
+        int[] count = new int[1];
+
+        try {
+            walk(root, s, (suffix, prefix) -> {
+                if (count[0] == sa.length) {
+                    throw new IllegalArgumentException("The text must end with a unique terminator.");
+                }
+                sa[count[0]] = suffix;
+                lcp[count[0]] = prefix;
+                count[0]++;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (count[0] != sa.length) {
+            throw new IllegalArgumentException("The text must end with a unique terminator.");
+        }
+        return new SuffixArray(sa, lcp);
+    }
+
+    /*
+     * Streams both arrays as big-endian ints without holding them in memory, for
+     * texts whose arrays do not fit on the heap. Returns the number of suffixes
+     * written.
+     */
+    public static int write(Node root, CharSequence s, DataOutput sa, DataOutput lcp) throws IOException {
+        int[] count = new int[1];
+
+        walk(root, s, (suffix, prefix) -> {
+            sa.writeInt(suffix);
+            lcp.writeInt(prefix);
+            count[0]++;
+        });
+
+        if (count[0] != s.length()) {
+            throw new IllegalArgumentException("The text must end with a unique terminator.");
+        }
+        return count[0];
+    }
+
+    private static void walk(Node root, CharSequence s, Sink sink) throws IOException {
+        /*
+         * Edges still to visit, with the string depth of the node above each. The
+         * children of a node are pushed largest first, so the smallest is popped
+         * first.
+         */
+        Edge[] stack = new Edge[16];
+        int[] depths = new int[16];
+        int size = 0;
+
+        /*
+         * The shallowest node passed since the last leaf, which is where that
+         * leaf and the next one part.
+         */
+        int shallowest = 0;
+
+        Node node = root;
+        int nodeDepth = 0;
+
+        while (true) {
+            if (node != null) {
+                List<Edge> edges = node.getAllEdges();
+                if (size + edges.size() > stack.length) {
+                    stack = Arrays.copyOf(stack, Math.max(size + edges.size(), stack.length * 2));
+                    depths = Arrays.copyOf(depths, stack.length);
+                }
+                size = pushChildren(edges, nodeDepth, s, stack, depths, size);
+            }
+
+            if (size == 0) {
+                break;
+            }
+
+            size--;
+            Edge e = stack[size];
+            int depth = depths[size];
+            shallowest = Math.min(shallowest, depth);
+
+            if (e.child == null) {
+                sink.accept(e.start - depth, shallowest);
+                shallowest = Integer.MAX_VALUE;
+            }
+
+            node = e.child;
+            nodeDepth = depth + e.getEnd(s.length()) - e.start;
+        }
+    }
+
+    /*
+     * Pushes edges in descending order of first character, all with the given
+     * depth, and returns the new stack size. The stack must have room.
+     */
+    private static int pushChildren(List<Edge> edges, int depth, CharSequence s, Edge[] stack, int[] depths,
+            int size) {
+        /*
+         * Insertion sort into the pushed run, which is a handful of edges.
+         */
+        int base = size;
+        for (Edge e : edges) {
+            if (e == null) {
+                continue;
+            }
+
+            char c = s.charAt(e.start);
+            int k = size;
+            while (k > base && s.charAt(stack[k - 1].start) < c) {
+                stack[k] = stack[k - 1];
+                k--;
+            }
+            stack[k] = e;
+            depths[size] = depth;
+            size++;
+        }
+
+        return size;
+    }
+}
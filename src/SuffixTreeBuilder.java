@@ -1,4 +1,8 @@
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /*
 * An implementation of Ukkonen's Algorithm.
@@ -35,62 +39,268 @@ which is theoretically equivalent
 */
 public class SuffixTreeBuilder {
     /*
-     * nb. isDebug: will insert a certain logs if set.
+     * Ends every document of a generalized tree (see addDocument).
+     *
+     * It never matches anything, not even another TERMINATOR, so each document
+     * behaves as if it had its own unique terminator.
      */
-    public static Node build(String s, NodeFactory factory, boolean isDebug, List<String> logs) {
+    public static final char TERMINATOR = '\uFFFF';
+
+    private final NodeFactory factory;
+    private final Node root;
+
+    /*
+     * The text being indexed: either the complete input, or what has been
+     * appended so far (which is also s).
+     */
+    private CharSequence s;
+    private StringBuilder text;
+
+    /*
+     * The peg indicates the last non repeating character,
+     * so where are no repeats, then peg and i are the same.
+     *
+     * These are kept between calls to extend so that the text can grow.
+     */
+    private int peg;
+    private int i;
+    private int counter;
+    private Node currentNode;
+    private Edge currentEdge;
+
+    /*
+     * Told about every step of the build, or null. See BuildListener.
+     */
+    private final BuildListener listener;
+
+    /*
+     * Documents only: the leaves created for the document being added, which
+     * are closed at its terminator, and the suffixes that end exactly on a node
+     * (the count, then the suffix start indexes).
+     */
+    private List<Edge> openLeaves;
+    private Map<Node, int[]> terminals;
+
+    private SuffixTreeBuilder(CharSequence s, NodeFactory factory, BuildListener listener) {
+        this.s = s;
+        this.factory = factory;
+        this.listener = listener;
+
         /*
          * Create the root node.
          */
-        Node root = factory.createNode();
+        root = factory.createNode();
         root.setSuffixLink(root);
         root.setIsRoot(true);
 
-        /*
-         * All terminal edges point to this gloabal end
-         */
-        End globalEnd = new End(0);
+        currentNode = root;
+    }
 
-        /*
-         * The peg indicates the last non repeating character,
-         * so where are no repeats, then peg and i are the same.
-         */
-        int peg = 0;
+    /*
+     * An online builder, which starts empty and grows with append.
+     *
+     * Between appends the tree is the implicit suffix tree of the text so far:
+     * every substring is a path from the root, so contains works, but suffixes
+     * that repeat earlier text end inside an edge rather than at a leaf.
+     */
+    public SuffixTreeBuilder(NodeFactory factory) {
+        this(factory, null);
+    }
+
+    public SuffixTreeBuilder(NodeFactory factory, BuildListener listener) {
+        this(new StringBuilder(), factory, listener);
+        text = (StringBuilder) s;
+    }
+
+    public static Node build(CharSequence s, NodeFactory factory) {
+        return build(s, factory, null);
+    }
+
+    public static Node build(CharSequence s, NodeFactory factory, BuildListener listener) {
+        SuffixTreeBuilder builder = new SuffixTreeBuilder(s, factory, listener);
+        builder.extend();
+        return builder.root;
+    }
+
+    /*
+     * A builder for a generalized tree, which grows one document at a time.
+     *
+     * Splits can leave an edge starting with a TERMINATOR, so the factory's
+     * nodes must be able to hold one. Nodes keyed by a fixed alphabet that lacks
+     * it, such as CharNode, are rejected here rather than failing mid-build.
+     */
+    public static SuffixTreeBuilder forDocuments(NodeFactory factory) {
+        Node probe = factory.createNode();
+        Edge edge = new Edge(0, 0);
+        boolean held;
+        try {
+            probe.setEdge(TERMINATOR, edge);
+            held = probe.getEdge(TERMINATOR) == edge;
+        } catch (RuntimeException e) {
+            held = false;
+        }
+        if (!held) {
+            throw new IllegalArgumentException(
+                    "The factory's nodes cannot hold an edge for TERMINATOR: " + factory.getClass().getSimpleName());
+        }
+
+        SuffixTreeBuilder builder = new SuffixTreeBuilder(factory);
+        builder.openLeaves = new ArrayList<>();
+        builder.terminals = new IdentityHashMap<>();
+        return builder;
+    }
+
+    /*
+     * Appends a document and a TERMINATOR, and extends the existing tree over
+     * them. Returns the index of the first character of the document.
+     *
+     * Leaves of the document end at its terminator, so no edge spans two
+     * documents. A suffix that already exists in the tree when the terminator
+     * arrives ends on a node instead of a leaf, see getTerminals.
+     */
+    public int addDocument(CharSequence document) {
+        if (openLeaves == null) {
+            throw new IllegalStateException("Not a document builder, see forDocuments.");
+        }
+        for (int k = 0; k < document.length(); k++) {
+            if (document.charAt(k) == TERMINATOR) {
+                throw new IllegalArgumentException("Documents cannot contain TERMINATOR, at index " + k + ".");
+            }
+        }
+
+        int start = text.length();
+        text.append(document).append(TERMINATOR);
+        extend();
+
+        for (Edge e : openLeaves) {
+            if (e.end == Edge.OPEN_END) {
+                e.end = i;
+            }
+        }
+        openLeaves.clear();
+
+        return start;
+    }
+
+    /*
+     * Adds characters to the end of the text, in amortized O(1) per character.
+     * The active point carries over, so earlier text is never scanned again.
+     */
+    public SuffixTreeBuilder append(char c) {
+        checkAppendable();
+        text.append(c);
+        extend();
+        return this;
+    }
+
+    public SuffixTreeBuilder append(CharSequence chars) {
+        checkAppendable();
+        text.append(chars);
+        extend();
+        return this;
+    }
+
+    private void checkAppendable() {
+        if (text == null) {
+            throw new IllegalStateException("The text was given up front, see SuffixTreeBuilder(NodeFactory).");
+        }
+        if (openLeaves != null) {
+            throw new IllegalStateException("A document builder only grows by addDocument.");
+        }
+    }
+
+    /*
+     * Is query a substring of the text appended so far?
+     */
+    public boolean contains(CharSequence query) {
+        return Util.contains(root, s, query);
+    }
+
+    public int length() {
+        return s.length();
+    }
+
+    public Node getRoot() {
+        return root;
+    }
 
-        Node currentNode = root;
-        Edge currentEdge = null;
+    public CharSequence getText() {
+        return s;
+    }
 
-        // counter
-        int counter = 0;
+    /*
+     * Copies the finished tree into a FrozenSuffixTree, for reading. The text
+     * must end with a unique terminator, so document builders cannot freeze.
+     */
+    public FrozenSuffixTree freeze() {
+        if (openLeaves != null) {
+            throw new IllegalStateException("A document builder cannot freeze: every document ends with the same "
+                    + "TERMINATOR, and suffixes ending on a node have no leaf.");
+        }
+        return FrozenSuffixTree.freeze(root, s);
+    }
+
+    /*
+     * The start indexes of the document suffixes that end exactly on this node.
+     */
+    public int[] getTerminals(Node node) {
+        int[] suffixes = terminals == null ? null : terminals.get(node);
+        return suffixes == null ? new int[0] : Arrays.copyOfRange(suffixes, 1, 1 + suffixes[0]);
+    }
+
+    private void addTerminal(Node node, int suffix) {
+        int[] suffixes = terminals.get(node);
+        if (suffixes == null) {
+            suffixes = new int[2];
+        } else if (suffixes[0] + 1 == suffixes.length) {
+            suffixes = Arrays.copyOf(suffixes, suffixes.length * 2);
+        }
+        suffixes[++suffixes[0]] = suffix;
+        terminals.put(node, suffixes);
+    }
+
+    /*
+     * Runs the algorithm from the current state to the end of the text.
+     */
+    private void extend() {
+        /*
+         * All terminal edges end at the global end, which is always i, so they store
+         * Edge.OPEN_END rather than a shared object. Moving i adds the character to
+         * all existing terminal edges.
+         *
+         * The state is copied into locals for the loop, and back afterwards.
+         */
+        CharSequence s = this.s;
+        BuildListener listener = this.listener;
+        List<Edge> openLeaves = this.openLeaves;
+        int peg = this.peg;
+        Node currentNode = this.currentNode;
+        Edge currentEdge = this.currentEdge;
+        int counter = this.counter;
 
         /*
          * It is required to understand that at each iteration, the
          * implicit suffix tree exists for 0..i.
          */
-        int i = 0;
+        int i = this.i;
+
+        if (listener != null) {
+            listener.started(s, i);
+        }
+
         while (i < s.length()) {
             char c = s.charAt(i);
 
+            /*
+             * A document terminator, which is different from every other character.
+             */
+            boolean terminal = openLeaves != null && c == TERMINATOR;
+
             if (currentNode.getIsRoot() == false && currentEdge == null) {
                 System.out.println("bug");
                 break;
             }
 
-            if (isDebug == true) {
-                StringBuilder b = new StringBuilder();
-                try {
-                    Util.suffixes(root, "", s, b, false);
-                    System.out.println(b.toString());
-
-                } catch (Exception e) {
-                    System.out.println("ERROR");
-                    throw e;
-                }
-            }
-
-            if (isDebug == true) {
-                logs.add("Inserting char " + c + ".");
-            }
-
             /*
              * Two cases:
              * 1. Not traversing an edge (guaranteed to be at the root node).
@@ -101,16 +311,30 @@ public class SuffixTreeBuilder {
              * Case 1. No active edge.
              */
             if (currentEdge == null) {
+                /*
+                 * All suffixes are explicit, and the empty one needs no leaf.
+                 */
+                if (terminal) {
+                    peg++;
+                }
                 /*
                  * Option 1:
                  * 
                  * There is no edge for the character. aka this character hasn't been seen
                  * before.
                  */
-                if (currentNode.getEdge(c) == null) {
-                    Edge e = new Edge(i, globalEnd);
+                else if (currentNode.getEdge(c) == null) {
+                    Edge e = new Edge(i, Edge.OPEN_END);
                     currentNode.setEdge(c, e);
 
+                    if (listener != null) {
+                        listener.leafCreated(currentNode, e);
+                    }
+
+                    if (openLeaves != null) {
+                        openLeaves.add(e);
+                    }
+
                     peg++;
                 }
                 /*
@@ -128,7 +352,7 @@ public class SuffixTreeBuilder {
             /*
              * Case 2. Traversing an edge...
              */
-            else if (c != s.charAt(currentEdge.start + counter)) {
+            else if (terminal || c != s.charAt(currentEdge.start + counter)) {
                 // System.out.println(currentEdge.start);
                 /*
                  * Option 1:
@@ -178,8 +402,12 @@ public class SuffixTreeBuilder {
                      */
                     currentEdge = currentNode.getEdge(s.charAt(i - counter));
 
-                    while (counter > (currentEdge.end.end - currentEdge.start)) {
-                        counter -= currentEdge.end.end - currentEdge.start;
+                    while (counter > (currentEdge.end - currentEdge.start)) {
+                        counter -= currentEdge.end - currentEdge.start;
+
+                        if (listener != null) {
+                            listener.skipped(currentEdge);
+                        }
 
                         // if this happens, then there is a bug
                         // if (currentEdge.child.getEdge(s.charAt(i - counter)) == null) {
@@ -195,8 +423,9 @@ public class SuffixTreeBuilder {
                      * even if the 'c' != next char, another branch might contain it, in this case
                      * continue down that edge..
                      */
-                    if (currentEdge.start + counter == currentEdge.end.end
+                    if (currentEdge.start + counter == currentEdge.end
                             && currentEdge.child != null
+                            && !terminal
                             && currentEdge.child.getEdge(c) != null) {
 
                         resetEdgeAndCounter = false;
@@ -206,11 +435,26 @@ public class SuffixTreeBuilder {
                         counter = 1;
                         i++;
                         break;
-                    } else if (currentEdge.start + counter == currentEdge.end.end
+                    } else if (currentEdge.start + counter == currentEdge.end
                             && currentEdge.child != null) {
 
-                        Edge newEdge = new Edge(i, globalEnd);
-                        currentEdge.child.setEdge(c, newEdge);
+                        /*
+                         * A terminator does not get a leaf, the suffix ends on the node.
+                         */
+                        if (terminal) {
+                            addTerminal(currentEdge.child, peg);
+                        } else {
+                            Edge newEdge = new Edge(i, Edge.OPEN_END);
+                            currentEdge.child.setEdge(c, newEdge);
+
+                            if (listener != null) {
+                                listener.leafCreated(currentEdge.child, newEdge);
+                            }
+
+                            if (openLeaves != null) {
+                                openLeaves.add(newEdge);
+                            }
+                        }
                     }
                     /*
                      * Create the new branch point, which == a new internal node, and copying over
@@ -219,19 +463,18 @@ public class SuffixTreeBuilder {
                     else {
                         Node internalNode = factory.createNode();
 
-                        // if (currentEdge.start + counter >= currentEdge.end.end)
+                        // if (currentEdge.start + counter >= currentEdge.end)
                         // {
                         // System.out.print("found");
                         // }
                         Edge split = new Edge(currentEdge.start + counter, currentEdge.end);
-                        Edge newEdge = new Edge(i, globalEnd);
                         
                         // Insert the node.
                         split.child = currentEdge.child;
 
                         // Update CurrentEdge: create a hard end, and set child to the new node.
                         currentEdge.child = internalNode;
-                        currentEdge.end = new End(currentEdge.start + counter);
+                        currentEdge.end = currentEdge.start + counter;
 
                         /*
                          * Set edges and suffix link.
@@ -240,7 +483,32 @@ public class SuffixTreeBuilder {
                          */
                         internalNode.setSuffixLink(root);
                         internalNode.setEdge(s.charAt(currentEdge.start + counter), split);
-                        internalNode.setEdge(c, newEdge);
+
+                        if (listener != null) {
+                            listener.split(currentNode, currentEdge, split);
+                        }
+
+                        if (terminal) {
+                            addTerminal(internalNode, peg);
+                        } else {
+                            Edge newEdge = new Edge(i, Edge.OPEN_END);
+                            internalNode.setEdge(c, newEdge);
+
+                            if (listener != null) {
+                                listener.leafCreated(internalNode, newEdge);
+                            }
+
+                            if (openLeaves != null) {
+                                openLeaves.add(newEdge);
+                            }
+                        }
+
+                        /*
+                         * The lower half of a leaf of this document is still open.
+                         */
+                        if (openLeaves != null && split.end == Edge.OPEN_END) {
+                            openLeaves.add(split);
+                        }
 
 
 
@@ -267,12 +535,10 @@ public class SuffixTreeBuilder {
                     /*
                      * Traverse the suffix link.
                      */
-                    currentNode = currentNode.getSuffixLink();
-
-                    if (isDebug == true) {
-                        logs.add("Traversed to a Suffix Link. Is it to the root?");
-                        logs.add(String.valueOf(currentNode.getIsRoot()));
+                    if (listener != null) {
+                        listener.suffixLinkTraversed(currentNode, currentNode.getSuffixLink());
                     }
+                    currentNode = currentNode.getSuffixLink();
 
                     peg++;
                 }
@@ -303,14 +569,16 @@ public class SuffixTreeBuilder {
                 i++;
                 counter++;
             }
-
-            /*
-             * Update the global end, which adds the character to all existing terminal
-             * edges.
-             */
-            globalEnd.end++;
         }
 
-        return root;
+        this.peg = peg;
+        this.i = i;
+        this.counter = counter;
+        this.currentNode = currentNode;
+        this.currentEdge = currentEdge;
+
+        if (listener != null) {
+            listener.finished(s);
+        }
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * A built ArenaTree and its text in a single file, which is loaded by mapping it
+ * into memory: queries read the columns straight from the page cache, so opening
+ * an index costs a few system calls however large the tree is.
+ *
+ * Layout, all ints little-endian:
+ *
+ *   header   magic "UKST", version, text encoding, size (ids), text length,
+ *            padded to HEADER_BYTES
+ *   columns  start, end, firstChild, nextSibling, suffixLink, size ints each
+ *   text     one byte per char (LATIN_1) or two (UTF_16)
+ *
+ * The version is bumped whenever the layout changes; files of other versions are
+ * rejected rather than misread.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class SuffixTreeFile {
+    public static final int MAGIC = 0x54534B55; // "UKST" read little-endian
+    public static final int VERSION = 1;
+
+    static final int LATIN_1 = 1;
+    static final int UTF_16 = 2;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int COLUMNS = 5;
+
+    private final ArenaTree tree;
+    private final CharSequence text;
+
+    private SuffixTreeFile(ArenaTree tree, CharSequence text) {
+        this.tree = tree;
+        this.text = text;
+    }
+
+    /*
+     * Writes a tree and the text it was built from. Only the ids in use are
+     * written, not the spare capacity of the columns.
+     */
+    public static void write(ArenaTree tree, CharSequence text, Path path) throws IOException {
+        int encoding = LATIN_1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                encoding = UTF_16;
+                break;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(encoding);
+            buffer.putInt(tree.size());
+            buffer.putInt(text.length());
+            while (buffer.position() < HEADER_BYTES) {
+                buffer.put((byte) 0);
+            }
+
+            for (IntColumn column : new IntColumn[] { tree.start, tree.end, tree.firstChild, tree.nextSibling,
+                    tree.suffixLink }) {
+                for (int id = 0; id < tree.size(); id++) {
+                    if (buffer.remaining() < Integer.BYTES) {
+                        drain(buffer, channel);
+                    }
+                    buffer.putInt(column.get(id));
+                }
+            }
+
+            for (int i = 0; i < text.length(); i++) {
+                if (buffer.remaining() < Character.BYTES) {
+                    drain(buffer, channel);
+                }
+                if (encoding == LATIN_1) {
+                    buffer.put((byte) text.charAt(i));
+                } else {
+                    buffer.putChar(text.charAt(i));
+                }
+            }
+
+            drain(buffer, channel);
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /*
+     * Maps a file written by write. Nothing is copied onto the heap; the returned
+     * tree is read-only.
+     */
+    public static SuffixTreeFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(path + " is not a suffix tree file.");
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a suffix tree file.");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(path + " has format version " + header.getInt(4) + ", expected " + VERSION
+                        + ".");
+            }
+
+            int encoding = header.getInt(8);
+            int size = header.getInt(12);
+            int length = header.getInt(16);
+
+            long columnBytes = (long) Integer.BYTES * size;
+            long textBytes = (long) (encoding == LATIN_1 ? 1 : Character.BYTES) * length;
+            if (encoding != LATIN_1 && encoding != UTF_16 || size < 1 || length < 0
+                    || channel.size() != HEADER_BYTES + COLUMNS * columnBytes + textBytes) {
+                throw new IOException(path + " is truncated or corrupt.");
+            }
+            if (columnBytes > Integer.MAX_VALUE || textBytes > Integer.MAX_VALUE) {
+                throw new IOException(path + " has columns larger than a single mapping.");
+            }
+
+            IntColumn[] columns = new IntColumn[COLUMNS];
+            for (int k = 0; k < COLUMNS; k++) {
+                columns[k] = new MappedIntColumn(channel
+                        .map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + k * columnBytes, columnBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+            }
+
+            long textAt = HEADER_BYTES + COLUMNS * columnBytes;
+            CharSequence text = encoding == LATIN_1 ? MappedText.map(channel, textAt, length)
+                    : channel.map(FileChannel.MapMode.READ_ONLY, textAt, textBytes).order(ByteOrder.LITTLE_ENDIAN)
+                            .asCharBuffer();
+
+            return new SuffixTreeFile(new ArenaTree(columns[0], columns[1], columns[2], columns[3], columns[4], size),
+                    text);
+        }
+    }
+
+    public ArenaTree getTree() {
+        return tree;
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public boolean contains(CharSequence query) {
+        return tree.contains(text, query);
+    }
+
+    public int[] locate(CharSequence query) {
+        return tree.locate(text, query);
+    }
+}
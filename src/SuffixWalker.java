@@ -0,0 +1,89 @@
+/*
+ * Enumerates the suffixes of a tree, leaf by leaf, without building strings.
+ *
+ * The walk keeps an explicit stack with one frame per node on the current path,
+ * so memory is bounded by the depth of the tree, not the size of the output,
+ * and deep trees cannot overflow the thread stack. Leaves are visited in the
+ * order of Util.suffixes: depth first, children in getAllEdges order.
+ */
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+public class SuffixWalker {
+    /*
+     * Receives each leaf: the start of its suffix, and the edges on the path from
+     * the root as starts[k]..ends[k] for k below edges. The arrays are reused, so
+     * copy what must outlive the call.
+     */
+    public interface Visitor {
+        void visit(int suffix, int[] starts, int[] ends, int edges) throws IOException;
+    }
+
+    public static void walk(Node root, CharSequence s, Visitor visitor) throws IOException {
+        List<Edge>[] children = newEdgeLists(16);
+        int[] next = new int[16];
+        int[] depths = new int[16];
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+
+        children[0] = root.getAllEdges();
+        int level = 0;
+
+        while (level >= 0) {
+            if (next[level] == children[level].size()) {
+                children[level] = null;
+                level--;
+                continue;
+            }
+
+            Edge e = children[level].get(next[level]++);
+            if (e == null) {
+                continue;
+            }
+
+            starts[level] = e.start;
+            ends[level] = e.getEnd(s.length());
+
+            if (e.child == null) {
+                visitor.visit(e.start - depths[level], starts, ends, level + 1);
+                continue;
+            }
+
+            level++;
+            if (level == children.length) {
+                children = Arrays.copyOf(children, level * 2);
+                next = Arrays.copyOf(next, level * 2);
+                depths = Arrays.copyOf(depths, level * 2);
+                starts = Arrays.copyOf(starts, level * 2);
+                ends = Arrays.copyOf(ends, level * 2);
+            }
+            children[level] = e.child.getAllEdges();
+            next[level] = 0;
+            depths[level] = depths[level - 1] + ends[level - 1] - starts[level - 1];
+        }
+    }
+
+    /*
+     * Java cannot create arrays of a generic type, only cast to one.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Edge>[] newEdgeLists(int length) {
+        return (List<Edge>[]) new List<?>[length];
+    }
+
+    /*
+     * Writes every suffix as a line of its edge labels, each preceded by "/",
+     * which is the format of Util.suffixes. Nothing is held beyond the current
+     * path, so buffer the writer rather than the output.
+     */
+    public static void write(Node root, CharSequence s, Writer writer) throws IOException {
+        walk(root, s, (suffix, starts, ends, edges) -> {
+            for (int k = 0; k < edges; k++) {
+                writer.append('/').append(s, starts[k], ends[k]);
+            }
+            writer.append('\n');
+        });
+    }
+}
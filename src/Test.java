@@ -1,5 +1,29 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class Test {
     /*
@@ -154,7 +178,12 @@ public class Test {
             List<String> logs = new ArrayList<>();
 
             // The string is: "abcabdeabdabfabcabcdg".
-            SuffixTreeBuilder.build(s5, factory, false, logs);
+            SuffixTreeBuilder.build(s5, factory, new BuildListener() {
+                @Override
+                public void suffixLinkTraversed(Node from, Node to) {
+                    logs.add(String.valueOf(to.getIsRoot()));
+                }
+            });
             String[] traversalsToRoot = {
                     // The first traversal to extend "d". Reaches root each time
                     "true", "true", "true",
@@ -211,7 +240,7 @@ public class Test {
                 // .out
                 // .println("String: " + TestCases.strings[i]);
 
-                Node root = SuffixTreeBuilder.build(strings[i], factory, false, null);
+                Node root = SuffixTreeBuilder.build(strings[i], factory);
                 StringBuilder b = new StringBuilder();
 
                 Util.suffixes(root, "", strings[i], b, false);
@@ -245,7 +274,7 @@ public class Test {
         String s = gene.substring(0, gene.length()) + "$";
     
         b = new StringBuilder();
-        root = SuffixTreeBuilder.build(s, new MapNodeFactory(), false, new ArrayList<>());
+        root = SuffixTreeBuilder.build(s, new MapNodeFactory());
         System.out.println(Util.countNodes(root));
     
         Util.suffixes(root, "", s, b, false);
@@ -272,4 +301,1735 @@ public class Test {
     
         System.out.println("All the suffixes for the gene present too: " + !results.contains(false));
     }
+
+    public static void testArenaTree(List<Boolean> results) {
+        System.out.println("Checking arena trees against MapNode trees:");
+
+        List<String> inputs = new ArrayList<>(Arrays.asList(strings));
+        inputs.add(gene + "$");
+
+        for (String s : inputs) {
+            try {
+                Node root = SuffixTreeBuilder.build(s, new MapNodeFactory());
+                StringBuilder expected = new StringBuilder();
+                Util.suffixes(root, "", s, expected, false);
+
+                ArenaTree tree = ArenaSuffixTreeBuilder.build(s);
+                StringBuilder actual = new StringBuilder();
+                tree.suffixes(ArenaTree.ROOT, "", s, actual);
+
+                boolean result = sorted(expected.toString()).equals(sorted(actual.toString()))
+                        && tree.countNodes() == Util.countNodes(root);
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+    }
+
+    public static void testDna(List<Boolean> results) {
+        System.out.println("Checking DNA nodes over packed text against MapNode trees:");
+
+        String[] inputs = new String[] { gene + "$", "acgtacg" + "$" + "acgga" + "#" };
+
+        for (String s : inputs) {
+            try {
+                PackedDna packed = PackedDna.of(s);
+
+                Node expectedRoot = SuffixTreeBuilder.build(s, new MapNodeFactory());
+                StringBuilder expected = new StringBuilder();
+                Util.suffixes(expectedRoot, "", s, expected, false);
+
+                Node root = SuffixTreeBuilder.build(packed, new DnaNodeFactory());
+                StringBuilder actual = new StringBuilder();
+                Util.suffixes(root, "", packed, actual, false);
+
+                boolean result = packed.toString().equals(s)
+                        && sorted(expected.toString()).equals(sorted(actual.toString()))
+                        && Util.countNodes(root) == Util.countNodes(expectedRoot);
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+    }
+
+    public static void testContains(List<Boolean> results) {
+        System.out.println("Checking substring lookups against String.contains:");
+
+        NodeFactory[] factories = new NodeFactory[] { new CharNodeFactory(), new MapNodeFactory(),
+                new DnaNodeFactory() };
+
+        for (NodeFactory factory : factories) {
+            try {
+                // CharNode only takes 'a'..'z', so terminate with a 'z'.
+                String s = gene + (factory instanceof CharNodeFactory ? "z" : "$");
+                Node root = SuffixTreeBuilder.build(s, factory);
+                Random random = new Random(7);
+
+                boolean result = true;
+                for (int k = 0; k < 2000; k++) {
+                    // Substrings of the text, which mostly end inside an edge.
+                    int length = 1 + random.nextInt(40);
+                    int start = random.nextInt(s.length() - length + 1);
+                    String present = s.substring(start, start + length);
+
+                    result &= Util.contains(root, s, present);
+                    result &= Util.contains(root, s, present.toCharArray());
+
+                    // Random patterns, mostly absent.
+                    char[] pattern = new char[1 + random.nextInt(12)];
+                    for (int j = 0; j < pattern.length; j++) {
+                        pattern[j] = "acgt*".charAt(random.nextInt(5));
+                    }
+                    result &= Util.contains(root, s, pattern) == s.contains(new String(pattern));
+                }
+                result &= Util.contains(root, s, "");
+                result &= !Util.contains(root, s, s + "a");
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+    }
+
+    public static void testCountAndLocate(List<Boolean> results) {
+        System.out.println("Checking occurrence counts and positions against a scan:");
+
+        String s = gene + "$";
+
+        for (NodeFactory factory : new NodeFactory[] { new MapNodeFactory(), new DnaNodeFactory() }) {
+            try {
+                Node root = SuffixTreeBuilder.build(s, factory);
+                Util.annotate(root, s);
+                Random random = new Random(11);
+
+                boolean result = true;
+                for (int k = 0; k < 500; k++) {
+                    String query;
+                    if (k % 2 == 0) {
+                        int length = 1 + random.nextInt(8);
+                        int start = random.nextInt(s.length() - length + 1);
+                        query = s.substring(start, start + length);
+                    } else {
+                        // Random patterns, absent once they get long.
+                        int length = 1 + random.nextInt(10);
+                        query = Benchmark.randomText(Benchmark.DNA, length, k).substring(0, length);
+                    }
+
+                    List<Integer> expected = new ArrayList<>();
+                    for (int at = s.indexOf(query); at >= 0; at = s.indexOf(query, at + 1)) {
+                        expected.add(at);
+                    }
+
+                    int[] positions = Util.locate(root, s, query);
+                    Arrays.sort(positions);
+
+                    List<Integer> actual = new ArrayList<>();
+                    for (int position : positions) {
+                        actual.add(position);
+                    }
+
+                    result &= Util.count(root, s, query) == expected.size();
+                    result &= actual.equals(expected);
+                }
+                result &= Util.count(root, s, "acgtacgtacgt*") == 0;
+                result &= Util.locate(root, s, s).length == 1;
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+    }
+
+    public static void testGeneralizedSuffixTree(List<Boolean> results) {
+        System.out.println("Checking the generalized tree against a scan of each document:");
+
+        // Repeats, prefixes and duplicates of earlier documents.
+        String[] documents = new String[] { "abcabc", "defdef", "abc", "abcabc", "cab", "b", "xabcabcx",
+                gene.substring(0, 300), gene.substring(100, 200), gene.substring(250, 400) };
+
+        // Every shipped factory whose nodes can hold a TERMINATOR edge.
+        Alphabet alphabet = Alphabet.of(String.join("", documents) + SuffixTreeBuilder.TERMINATOR);
+        for (NodeFactory factory : new NodeFactory[] { new MapNodeFactory(), new DnaNodeFactory(),
+                new AdaptiveNodeFactory(), new AlphabetNodeFactory(alphabet) }) {
+            try {
+                GeneralizedSuffixTree tree = new GeneralizedSuffixTree(factory);
+                boolean result = true;
+
+                for (int d = 0; d < documents.length; d++) {
+                    tree.addDocument(100 + d, documents[d]);
+
+                    // Query after every addition, the tree is never rebuilt.
+                    for (int k = 0; k <= d; k++) {
+                        for (int length = 1; length <= 4; length++) {
+                            for (int start = 0; start + length <= documents[k].length(); start += 3) {
+                                result &= sameCounts(tree, documents, d, documents[k].substring(start, start + length));
+                            }
+                        }
+                    }
+                    result &= sameCounts(tree, documents, d, "abcd");
+                    result &= sameCounts(tree, documents, d, documents[d]);
+                }
+                result &= tree.documentsContaining("abca").length == 3;
+                result &= tree.documentAt(6) == 100 && tree.documentAt(7) == 101;
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+    }
+
+    public static void testGeneralizedFactories(List<Boolean> results) {
+        System.out.println("Checking that factories without a TERMINATOR slot are rejected:");
+
+        boolean result = true;
+        for (NodeFactory factory : new NodeFactory[] { new CharNodeFactory(), AlphabetNodeFactory.of("abc") }) {
+            try {
+                new GeneralizedSuffixTree(factory);
+                result = false;
+            } catch (IllegalArgumentException e) {
+                // Expected, before any document is added.
+            }
+        }
+
+        // Documents that split a leaf at the first document's terminator.
+        Alphabet alphabet = Alphabet.of("abc" + SuffixTreeBuilder.TERMINATOR);
+        for (NodeFactory factory : new NodeFactory[] { new MapNodeFactory(), new DnaNodeFactory(),
+                new AdaptiveNodeFactory(), new AlphabetNodeFactory(alphabet) }) {
+            try {
+                GeneralizedSuffixTree tree = new GeneralizedSuffixTree(factory);
+                tree.addDocument(1, "ab");
+                tree.addDocument(2, "abc");
+                tree.addDocument(1, "bab");
+                GeneralizedSuffixTree.Counts counts = tree.countPerDocument("ab");
+                result &= Arrays.equals(counts.documents, new int[] { 1, 2 })
+                        && Arrays.equals(counts.counts, new int[] { 2, 1 });
+            } catch (Exception e) {
+                e.printStackTrace();
+                result = false;
+            }
+        }
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    /*
+     * Do the per document counts match a scan of the first last + 1 documents?
+     */
+    private static boolean sameCounts(GeneralizedSuffixTree tree, String[] documents, int last, String pattern) {
+        Map<Integer, Integer> expected = new LinkedHashMap<>();
+        for (int d = 0; d <= last; d++) {
+            int count = 0;
+            for (int at = documents[d].indexOf(pattern); at >= 0; at = documents[d].indexOf(pattern, at + 1)) {
+                count++;
+            }
+            if (count > 0) {
+                expected.put(100 + d, count);
+            }
+        }
+
+        GeneralizedSuffixTree.Counts counts = tree.countPerDocument(pattern);
+        Map<Integer, Integer> actual = new LinkedHashMap<>();
+        for (int k = 0; k < counts.size(); k++) {
+            actual.put(counts.documents[k], counts.counts[k]);
+        }
+        return actual.equals(expected) && tree.documentsContaining(pattern).length == expected.size();
+    }
+
+    public static void testOnlineBuilder(List<Boolean> results) {
+        System.out.println("Checking the online builder between appends:");
+
+        String s = gene + "$";
+
+        for (NodeFactory factory : new NodeFactory[] { new MapNodeFactory(), new DnaNodeFactory() }) {
+            try {
+                SuffixTreeBuilder online = new SuffixTreeBuilder(factory);
+                Random random = new Random(13);
+                boolean result = true;
+
+                for (int i = 0; i < s.length(); i++) {
+                    online.append(s.charAt(i));
+
+                    // Query the implicit tree of the prefix so far.
+                    if (i % 97 == 0) {
+                        String prefix = s.substring(0, i + 1);
+                        for (int k = 0; k < 50; k++) {
+                            int length = 1 + random.nextInt(Math.min(20, prefix.length()));
+                            int start = random.nextInt(prefix.length() - length + 1);
+                            result &= online.contains(prefix.substring(start, start + length));
+
+                            String absent = prefix.substring(start, start + length) + "acgt".charAt(k % 4);
+                            result &= online.contains(absent) == prefix.contains(absent);
+                        }
+                    }
+                }
+
+                // Appending in chunks gives the same tree as one build.
+                SuffixTreeBuilder chunked = new SuffixTreeBuilder(factory);
+                for (int i = 0; i < s.length(); i += 1000) {
+                    chunked.append(s.subSequence(i, Math.min(s.length(), i + 1000)));
+                }
+
+                StringBuilder expected = new StringBuilder();
+                Util.suffixes(SuffixTreeBuilder.build(s, factory), "", s, expected, false);
+                StringBuilder actual = new StringBuilder();
+                Util.suffixes(online.getRoot(), "", online.getText(), actual, false);
+                StringBuilder actualChunked = new StringBuilder();
+                Util.suffixes(chunked.getRoot(), "", chunked.getText(), actualChunked, false);
+
+                result &= expected.toString().equals(actual.toString());
+                result &= expected.toString().equals(actualChunked.toString());
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+    }
+
+    public static void testTextSources(List<Boolean> results) {
+        System.out.println("Checking byte and memory-mapped texts against String:");
+
+        // Binary data, every byte value, terminated by a byte that does not occur.
+        byte[] binary = new byte[3000];
+        Random random = new Random(17);
+        for (int i = 0; i < binary.length - 1; i++) {
+            binary[i] = (byte) random.nextInt(255);
+        }
+        binary[binary.length - 1] = (byte) 255;
+
+        byte[][] inputs = new byte[][] { (gene + "$").getBytes(StandardCharsets.ISO_8859_1), binary };
+
+        for (byte[] bytes : inputs) {
+            try {
+                String s = new String(bytes, StandardCharsets.ISO_8859_1);
+
+                Path file = Files.createTempFile("ukkonen", ".txt");
+                Files.write(file, bytes);
+                MappedText mapped = MappedText.open(file);
+                Files.delete(file);
+
+                StringBuilder expected = new StringBuilder();
+                Util.suffixes(SuffixTreeBuilder.build(s, new MapNodeFactory()), "", s, expected, false);
+
+                boolean result = true;
+                for (CharSequence text : new CharSequence[] { new ByteText(bytes), mapped }) {
+                    Node root = SuffixTreeBuilder.build(text, new MapNodeFactory());
+                    StringBuilder actual = new StringBuilder();
+                    Util.suffixes(root, "", text, actual, false);
+
+                    result &= text.toString().equals(s);
+                    result &= expected.toString().equals(actual.toString());
+                    result &= Util.contains(root, text, s.substring(100, 140));
+                    result &= Util.contains(root, text, text.subSequence(2000, 2100));
+
+                    // Views are bounded by their own length, not by the text's.
+                    CharSequence view = text.subSequence(10, 20);
+                    result &= view.subSequence(2, 5).toString().equals(s.substring(12, 15))
+                            && outOfBounds(view, 5, 11) && outOfBounds(view, 5, 4) && outOfBounds(view, -1, 3);
+                }
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+    }
+
+    private static boolean outOfBounds(CharSequence text, int start, int end) {
+        try {
+            text.subSequence(start, end);
+            return false;
+        } catch (IndexOutOfBoundsException e) {
+            return true;
+        }
+    }
+
+    public static void testSuffixTreeFile(List<Boolean> results) {
+        System.out.println("Checking trees reloaded from a mapped file:");
+
+        String s = gene + "$";
+
+        GeneralizedSuffixTree documents = new GeneralizedSuffixTree(new MapNodeFactory());
+        documents.addDocument(1, gene.substring(0, 2000));
+        documents.addDocument(2, gene.substring(1000, 3000));
+
+        // An arena build, a copied MapNode tree, and a text that needs two bytes per char.
+        ArenaTree[] trees = new ArenaTree[] { ArenaSuffixTreeBuilder.build(s),
+                ArenaTree.of(SuffixTreeBuilder.build(s, new MapNodeFactory()), s),
+                ArenaTree.of(documents.getRoot(), documents.getText()) };
+        CharSequence[] texts = new CharSequence[] { s, s, documents.getText() };
+
+        // The generalized tree's suffixes that end on a node, which have no leaf to copy.
+        Set<Integer> terminals = new HashSet<>();
+        Deque<Node> nodes = new ArrayDeque<>();
+        nodes.push(documents.getRoot());
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            for (int suffix : documents.getTerminals(node)) {
+                terminals.add(suffix);
+            }
+            for (Edge e : node.getAllEdges()) {
+                if (e != null && e.child != null) {
+                    nodes.push(e.child);
+                }
+            }
+        }
+
+        for (int k = 0; k < trees.length; k++) {
+            try {
+                ArenaTree tree = trees[k];
+                CharSequence text = texts[k];
+
+                Path path = Files.createTempFile("ukkonen", ".tree");
+                SuffixTreeFile.write(tree, text, path);
+                SuffixTreeFile file = SuffixTreeFile.open(path);
+                Files.delete(path);
+
+                StringBuilder expected = new StringBuilder();
+                tree.suffixes(ArenaTree.ROOT, "", text, expected);
+                StringBuilder actual = new StringBuilder();
+                file.getTree().suffixes(ArenaTree.ROOT, "", file.getText(), actual);
+
+                boolean result = expected.toString().equals(actual.toString())
+                        && file.getText().toString().equals(text.toString());
+
+                Random random = new Random(k);
+                for (int q = 0; q < 200; q++) {
+                    int start = random.nextInt(text.length() - 20);
+                    String query = text.subSequence(start, start + 1 + random.nextInt(20)).toString();
+                    result &= file.contains(query);
+                    result &= Arrays.equals(tree.locate(text, query), file.locate(query));
+
+                    // Both against a scan of the text, less the terminals of the generalized tree.
+                    List<Integer> scanned = new ArrayList<>();
+                    String plain = text.toString();
+                    for (int at = plain.indexOf(query); at >= 0; at = plain.indexOf(query, at + 1)) {
+                        if (k < 2 || !terminals.contains(at)) {
+                            scanned.add(at);
+                        }
+                    }
+                    int[] located = file.locate(query);
+                    Arrays.sort(located);
+                    result &= Arrays.equals(located, scanned.stream().mapToInt(Integer::intValue).toArray());
+                }
+                result &= !file.contains(gene.substring(0, 100) + "x");
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+
+        // Anything else is rejected instead of misread.
+        try {
+            Path path = Files.createTempFile("ukkonen", ".tree");
+            Files.write(path, s.getBytes(StandardCharsets.ISO_8859_1));
+            boolean rejected = false;
+            try {
+                SuffixTreeFile.open(path);
+            } catch (IOException e) {
+                rejected = true;
+            }
+            Files.delete(path);
+
+            System.out.println(rejected);
+
+            results.add(rejected);
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            results.add(false);
+        }
+    }
+
+    public static void testSubstrings(List<Boolean> results) {
+        System.out.println("Checking longest repeated and common substrings against a scan:");
+
+        Random random = new Random(23);
+        boolean repeated = true;
+        boolean common = true;
+
+        for (int trial = 0; trial < 200; trial++) {
+            String s = Benchmark.randomText("ab".substring(0, 1 + trial % 2) + "cd".substring(0, trial % 3),
+                    1 + random.nextInt(150), trial);
+
+            Span span = Substrings.longestRepeated(SuffixTreeBuilder.build(s, new MapNodeFactory()));
+            String found = span.of(s).toString();
+            repeated &= span.length == longestRepeatedByScan(s)
+                    && s.indexOf(found) != s.lastIndexOf(found);
+
+            String[] documents = new String[2 + trial % 3];
+            GeneralizedSuffixTree tree = new GeneralizedSuffixTree(new MapNodeFactory());
+            for (int k = 0; k < documents.length; k++) {
+                documents[k] = Benchmark.randomText("abc", random.nextInt(60), random.nextLong());
+                documents[k] = documents[k].substring(0, documents[k].length() - 1);
+                tree.addDocument(k, documents[k]);
+            }
+
+            Span shared = Substrings.longestCommon(tree);
+            String sharedText = shared.of(tree.getText()).toString();
+            common &= shared.length == longestCommonByScan(documents);
+            for (String document : documents) {
+                common &= document.contains(sharedText);
+            }
+        }
+
+        String s = gene + "$";
+        Span span = Substrings.longestRepeated(SuffixTreeBuilder.build(s, new DnaNodeFactory()));
+        repeated &= span.length == longestRepeatedByScan(s);
+
+        System.out.println(repeated);
+        System.out.println(common);
+
+        results.add(repeated);
+        results.add(common);
+    }
+
+    private static int longestRepeatedByScan(String s) {
+        int best = 0;
+        for (int i = 0; i < s.length(); i++) {
+            for (int j = i + 1; j < s.length(); j++) {
+                int l = 0;
+                while (j + l < s.length() && s.charAt(i + l) == s.charAt(j + l)) {
+                    l++;
+                }
+                best = Math.max(best, l);
+            }
+        }
+        return best;
+    }
+
+    private static int longestCommonByScan(String[] documents) {
+        String first = documents[0];
+        for (int length = first.length(); length > 0; length--) {
+            for (int i = 0; i + length <= first.length(); i++) {
+                boolean everywhere = true;
+                for (String document : documents) {
+                    everywhere &= document.contains(first.substring(i, i + length));
+                }
+                if (everywhere) {
+                    return length;
+                }
+            }
+        }
+        return 0;
+    }
+
+    public static void testParallelBuilder(List<Boolean> results) {
+        System.out.println("Checking parallel construction against the sequential builder:");
+
+        Random random = new Random(29);
+        String[] inputs = new String[] { gene + "$", Benchmark.randomText("ab", 3000, 1), "aaaaaaaaaaaaaaaaz",
+                "z", Benchmark.randomText("abc", 500, 2).substring(0, 500),
+                // Repetitive enough that the buckets give up and build sequentially.
+                Benchmark.periodicText("acgt", 50, 3000, 3) };
+
+        for (NodeFactory factory : new NodeFactory[] { new CharNodeFactory(), new DnaNodeFactory(),
+                new MapNodeFactory() }) {
+            boolean result = true;
+
+            for (String s : inputs) {
+                if (factory instanceof CharNodeFactory && s.contains("$")
+                        || factory instanceof DnaNodeFactory && !s.contains("$")) {
+                    continue;
+                }
+
+                StringBuilder expected = new StringBuilder();
+                Util.suffixes(SuffixTreeBuilder.build(s, factory), "", s, expected, false);
+
+                for (int threads : new int[] { 1, 2, 3 + random.nextInt(6) }) {
+                    Node root = ParallelSuffixTreeBuilder.build(s, factory, threads);
+                    StringBuilder actual = new StringBuilder();
+                    Util.suffixes(root, "", s, actual, false);
+
+                    // HashMap iteration order can depend on insertion order.
+                    result &= factory instanceof MapNodeFactory
+                            ? sorted(expected.toString()).equals(sorted(actual.toString()))
+                            : expected.toString().equals(actual.toString());
+                    result &= Util.countNodes(root) == Util.countNodes(SuffixTreeBuilder.build(s, factory));
+                    result &= !isTerminated(s) || linksAreReal(root, s);
+                }
+            }
+
+            System.out.println(result);
+
+            results.add(result);
+        }
+    }
+
+    private static boolean isTerminated(String s) {
+        return s.indexOf(s.charAt(s.length() - 1)) == s.length() - 1;
+    }
+
+    /*
+     * Does every internal node link to the node for its path without the first
+     * character?
+     */
+    private static boolean linksAreReal(Node root, String s) {
+        boolean result = true;
+        Deque<Node> nodes = new ArrayDeque<>();
+        Deque<String> paths = new ArrayDeque<>();
+        nodes.push(root);
+        paths.push("");
+
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            String path = paths.pop();
+            for (Edge e : node.getAllEdges()) {
+                if (e == null || e.child == null) {
+                    continue;
+                }
+                String childPath = path + s.substring(e.start, e.end);
+                Node link = e.child.getSuffixLink();
+                if (childPath.length() == 1) {
+                    result &= link == root;
+                } else {
+                    Edge linked = Util.find(root, s, childPath.substring(1));
+                    result &= linked != null && linked.child == link;
+                }
+                nodes.push(e.child);
+                paths.push(childPath);
+            }
+        }
+        return result;
+    }
+
+    public static void testSuffixArray(List<Boolean> results) {
+        System.out.println("Checking suffix and LCP arrays against sorted suffixes:");
+
+        Random random = new Random(31);
+        List<String> inputs = new ArrayList<>();
+        inputs.add(gene + "$");
+        inputs.add("z");
+        for (int trial = 0; trial < 50; trial++) {
+            inputs.add(Benchmark.randomText("abc".substring(0, 1 + trial % 3), random.nextInt(300), trial));
+        }
+
+        for (NodeFactory factory : new NodeFactory[] { new CharNodeFactory(), new DnaNodeFactory(),
+                new MapNodeFactory() }) {
+            boolean result = true;
+
+            for (String s : inputs) {
+                if (factory instanceof CharNodeFactory && s.contains("$")
+                        || factory instanceof DnaNodeFactory && !s.contains("$")) {
+                    continue;
+                }
+
+                SuffixArray array = SuffixArray.of(SuffixTreeBuilder.build(s, factory), s);
+
+                Integer[] expected = new Integer[s.length()];
+                for (int i = 0; i < expected.length; i++) {
+                    expected[i] = i;
+                }
+                Arrays.sort(expected, (a, b) -> s.substring(a).compareTo(s.substring(b)));
+
+                for (int i = 0; i < expected.length; i++) {
+                    result &= array.sa[i] == expected[i];
+
+                    int l = 0;
+                    while (i > 0 && expected[i - 1] + l < s.length() && expected[i] + l < s.length()
+                            && s.charAt(expected[i - 1] + l) == s.charAt(expected[i] + l)) {
+                        l++;
+                    }
+                    result &= array.lcp[i] == l;
+                }
+            }
+
+            System.out.println(result);
+
+            results.add(result);
+        }
+
+        // Streaming gives the same arrays, and an unterminated text is refused.
+        try {
+            String s = gene + "$";
+            Node root = SuffixTreeBuilder.build(s, new MapNodeFactory());
+            SuffixArray array = SuffixArray.of(root, s);
+
+            ByteArrayOutputStream sa = new ByteArrayOutputStream();
+            ByteArrayOutputStream lcp = new ByteArrayOutputStream();
+            SuffixArray.write(root, s, new DataOutputStream(sa), new DataOutputStream(lcp));
+
+            IntBuffer saInts = ByteBuffer.wrap(sa.toByteArray()).asIntBuffer();
+            IntBuffer lcpInts = ByteBuffer.wrap(lcp.toByteArray()).asIntBuffer();
+            boolean result = saInts.remaining() == s.length() && lcpInts.remaining() == s.length();
+            for (int i = 0; result && i < s.length(); i++) {
+                result &= saInts.get(i) == array.sa[i] && lcpInts.get(i) == array.lcp[i];
+            }
+
+            boolean refused = false;
+            try {
+                SuffixArray.of(SuffixTreeBuilder.build("abab", new MapNodeFactory()), "abab");
+            } catch (IllegalArgumentException e) {
+                refused = true;
+            }
+            result &= refused;
+
+            System.out.println(result);
+
+            results.add(result);
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            results.add(false);
+        }
+    }
+
+    public static void testQueryEngine(List<Boolean> results) {
+        System.out.println("Checking batch queries from several threads against single lookups:");
+
+        Random random = new Random(37);
+        CharSequence[] patterns = new CharSequence[3000];
+        for (int k = 0; k < patterns.length; k++) {
+            int start = random.nextInt(gene.length() - 12);
+            String pattern = gene.substring(start, start + 1 + random.nextInt(12));
+            // A third are mutated, so most of those are absent.
+            patterns[k] = k % 3 == 0 ? pattern.substring(0, pattern.length() - 1) + "gt".charAt(k % 2) : pattern;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (NodeFactory factory : new NodeFactory[] { new CharNodeFactory(), new MapNodeFactory(),
+                    new DnaNodeFactory() }) {
+                String s = gene + (factory instanceof DnaNodeFactory ? "$" : "z");
+                Node root = SuffixTreeBuilder.build(s, factory);
+                QueryEngine engine = new QueryEngine(root, s, pool);
+
+                boolean[] expectedContains = new boolean[patterns.length];
+                int[] expectedCounts = new int[patterns.length];
+                for (int k = 0; k < patterns.length; k++) {
+                    expectedContains[k] = s.contains(patterns[k]);
+                    for (int i = s.indexOf(patterns[k].toString()); i >= 0; i = s.indexOf(patterns[k].toString(),
+                            i + 1)) {
+                        expectedCounts[k]++;
+                    }
+                }
+
+                // Several callers share the engine and its pool at once.
+                List<Thread> threads = new ArrayList<>();
+                boolean[] agree = new boolean[4];
+                for (int t = 0; t < agree.length; t++) {
+                    int caller = t;
+                    Thread thread = new Thread(() -> {
+                        boolean result = true;
+                        for (int round = 0; round < 5; round++) {
+                            result &= Arrays.equals(expectedContains, engine.contains(patterns));
+                            result &= Arrays.equals(expectedCounts, engine.count(patterns));
+
+                            QueryEngine.Locations locations = engine.locate(patterns);
+                            for (int k = 0; k < patterns.length; k++) {
+                                result &= locations.count(k) == expectedCounts[k];
+                                for (int j = locations.offsets[k]; j < locations.offsets[k + 1]; j++) {
+                                    int at = locations.positions[j];
+                                    result &= s.startsWith(patterns[k].toString(), at);
+                                }
+                            }
+                        }
+                        agree[caller] = result;
+                    });
+                    threads.add(thread);
+                    thread.start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+
+                boolean result = true;
+                for (boolean a : agree) {
+                    result &= a;
+                }
+
+                System.out.println(result);
+
+                results.add(result);
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+
+            results.add(false);
+        } finally {
+            pool.shutdown();
+        }
+
+        // A text without a unique terminator is rejected rather than miscounted.
+        boolean rejected = false;
+        try {
+            new QueryEngine(SuffixTreeBuilder.build("abab", new MapNodeFactory()), "abab");
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        System.out.println(rejected);
+        results.add(rejected);
+    }
+
+    public static void testSuffixWalker(List<Boolean> results) {
+        System.out.println("Checking the suffix walker against recursive traversal:");
+
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            run.append('a');
+        }
+        String[] inputs = new String[] { gene + "z", run.append('z').toString(), Benchmark.randomText("ab", 2000, 3)
+                .substring(0, 2000) };
+
+        for (NodeFactory factory : new NodeFactory[] { new CharNodeFactory(), new MapNodeFactory() }) {
+            try {
+                boolean result = true;
+
+                for (String s : inputs) {
+                    Node root = SuffixTreeBuilder.build(s, factory);
+
+                    StringBuilder expected = new StringBuilder();
+                    suffixesByRecursion(root, "", s, expected);
+
+                    StringBuilder actual = new StringBuilder();
+                    Util.suffixes(root, "", s, actual, false);
+                    result &= expected.toString().equals(actual.toString());
+
+                    StringWriter written = new StringWriter();
+                    SuffixWalker.write(root, s, written);
+                    result &= expected.toString().equals(written.toString());
+
+                    // Each path spells the suffix it reports, up to the end of its leaf.
+                    boolean[] spelled = new boolean[] { true };
+                    SuffixWalker.walk(root, s, (suffix, starts, ends, edges) -> {
+                        int at = suffix;
+                        for (int k = 0; k < edges; k++) {
+                            spelled[0] &= s.regionMatches(at, s, starts[k], ends[k] - starts[k]);
+                            at += ends[k] - starts[k];
+                        }
+                        spelled[0] &= at == s.length();
+                    });
+                    result &= spelled[0];
+                }
+
+                System.out.println(result);
+
+                results.add(result);
+            } catch (IOException e) {
+                e.printStackTrace();
+
+                results.add(false);
+            }
+        }
+    }
+
+    /*
+     * Util.suffixes as it was before SuffixWalker.
+     */
+    private static void suffixesByRecursion(Node tree, String path, CharSequence s, StringBuilder builder) {
+        if (tree == null) {
+            builder.append(path + "\n");
+            return;
+        }
+
+        for (Edge e : tree.getAllEdges()) {
+            if (e != null) {
+                suffixesByRecursion(e.child, path + "/" + s.subSequence(e.start, e.getEnd(s.length())), s, builder);
+            }
+        }
+    }
+
+    public static void testBuildMetrics(List<Boolean> results) {
+        System.out.println("Checking build metrics against the finished tree:");
+
+        String s = gene + "$";
+
+        BuildMetrics metrics = new BuildMetrics();
+        Node root = SuffixTreeBuilder.build(s, new MapNodeFactory(), metrics);
+        BuildMetrics.Snapshot snapshot = metrics.snapshot();
+        metrics.commit();
+
+        int[] leaves = new int[1];
+        try {
+            SuffixWalker.walk(root, s, (suffix, starts, ends, edges) -> leaves[0]++);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // A terminated text has a leaf per suffix, and a node per split plus the root.
+        boolean result = snapshot.characters == s.length() && snapshot.leaves == leaves[0]
+                && snapshot.leaves == s.length() && snapshot.splits == Util.countNodes(root) - 1
+                && snapshot.rootReturns <= snapshot.suffixLinkTraversals && snapshot.skips > 0
+                && snapshot.charactersPerSecond() > 0;
+
+        // Appends add up to the same work as one build.
+        BuildMetrics online = new BuildMetrics();
+        SuffixTreeBuilder builder = new SuffixTreeBuilder(new MapNodeFactory(), online);
+        for (int i = 0; i < s.length(); i += 100) {
+            builder.append(s.subSequence(i, Math.min(s.length(), i + 100)));
+        }
+        BuildMetrics.Snapshot appended = online.snapshot();
+        result &= appended.characters == snapshot.characters && appended.leaves == snapshot.leaves
+                && appended.splits == snapshot.splits && appended.skips == snapshot.skips
+                && appended.suffixLinkTraversals == snapshot.suffixLinkTraversals;
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    public static void testAdaptiveNode(List<Boolean> results) {
+        System.out.println("Checking adaptive nodes through every size:");
+
+        // One node taking keys in random order, across the table and beyond a byte.
+        Random random = new Random(41);
+        AdaptiveNode node = new AdaptiveNode();
+        Map<Character, Edge> expected = new LinkedHashMap<>();
+        boolean result = true;
+        for (int step = 0; step < 2000; step++) {
+            char c = (char) (step < 1000 ? random.nextInt(200) : random.nextInt(400));
+            Edge e = new Edge(step, step + 1);
+            node.setEdge(c, e);
+            expected.put(c, e);
+
+            for (int q = 0; q < 5; q++) {
+                char key = (char) random.nextInt(420);
+                result &= node.getEdge(key) == expected.get(key);
+            }
+        }
+        List<Edge> all = node.getAllEdges();
+        result &= all.size() == expected.size();
+        for (int k = 1; k < all.size(); k++) {
+            result &= all.get(k - 1).start != all.get(k).start;
+        }
+
+        // Edges come out in key order in the small arrays, the table and back, and are copies.
+        AdaptiveNode growing = new AdaptiveNode();
+        List<Character> keys = new ArrayList<>();
+        for (int size = 1; size <= AdaptiveNode.TABLE_AFTER + 4; size++) {
+            char c;
+            do {
+                c = (char) (1 + random.nextInt(AdaptiveNode.TABLE_SIZE - 1));
+            } while (keys.contains(c));
+            keys.add(c);
+            growing.setEdge(c, new Edge(c, c + 1));
+            result &= keyOrder(growing, keys);
+        }
+        keys.add((char) 300);
+        growing.setEdge((char) 300, new Edge(300, 301));
+        result &= keyOrder(growing, keys);
+        growing.getAllEdges().clear();
+        result &= growing.getAllEdges().size() == keys.size();
+
+        System.out.println(result);
+
+        results.add(result);
+
+        // Whole trees match MapNode, including binary input.
+        byte[] binary = new byte[3000];
+        for (int i = 0; i < binary.length - 1; i++) {
+            binary[i] = (byte) random.nextInt(255);
+        }
+        binary[binary.length - 1] = (byte) 255;
+
+        result = true;
+        for (CharSequence s : new CharSequence[] { gene + "$", Test.gst1, new ByteText(binary),
+                Benchmark.randomText("ab", 2000, 5) }) {
+            StringBuilder expectedSuffixes = new StringBuilder();
+            Util.suffixes(SuffixTreeBuilder.build(s, new MapNodeFactory()), "", s, expectedSuffixes, false);
+
+            Node root = SuffixTreeBuilder.build(s, new AdaptiveNodeFactory());
+            StringBuilder actual = new StringBuilder();
+            Util.suffixes(root, "", s, actual, false);
+
+            result &= sorted(expectedSuffixes.toString()).equals(sorted(actual.toString()));
+            result &= Util.contains(root, s, s.subSequence(s.length() / 3, s.length() / 2));
+        }
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    /*
+     * Are the node's edges, whose starts are their keys, in the order of keys?
+     */
+    private static boolean keyOrder(Node node, List<Character> keys) {
+        List<Character> sortedKeys = new ArrayList<>(keys);
+        Collections.sort(sortedKeys);
+        List<Character> actual = new ArrayList<>();
+        for (Edge e : node.getAllEdges()) {
+            actual.add((char) e.start);
+        }
+        return actual.equals(sortedKeys);
+    }
+
+    public static void testAlphabetNode(List<Boolean> results) {
+        System.out.println("Checking alphabet nodes on bytes, words and mixed case:");
+
+        Random random = new Random(43);
+        byte[] binary = new byte[3000];
+        for (int i = 0; i < binary.length - 1; i++) {
+            binary[i] = (byte) random.nextInt(255);
+        }
+        binary[binary.length - 1] = (byte) 255;
+        ByteText bytes = new ByteText(binary);
+
+        CharSequence[] inputs = new CharSequence[] { bytes, gene + "$", Benchmark.randomWords(3000, 7),
+                "Log 2024-01-02 ERROR x=17; Log 2024-01-03 WARN x=18; Log 2024-01-03 ERROR y=4!" };
+        NodeFactory[] factories = new NodeFactory[] { new AlphabetNodeFactory(Alphabet.bytes()),
+                AlphabetNodeFactory.of(inputs[1]), AlphabetNodeFactory.of(inputs[2]),
+                AlphabetNodeFactory.of(inputs[3]) };
+
+        boolean result = true;
+        for (int k = 0; k < inputs.length; k++) {
+            CharSequence s = inputs[k];
+
+            StringBuilder expected = new StringBuilder();
+            Util.suffixes(SuffixTreeBuilder.build(s, new MapNodeFactory()), "", s, expected, false);
+
+            Node root = SuffixTreeBuilder.build(s, factories[k]);
+            StringBuilder actual = new StringBuilder();
+            Util.suffixes(root, "", s, actual, false);
+
+            result &= sorted(expected.toString()).equals(sorted(actual.toString()));
+            result &= Util.contains(root, s, s.subSequence(s.length() / 3, s.length() / 2));
+            result &= !Util.contains(root, s, "\u2603");
+        }
+
+        // Ranks follow the given order, and characters outside the alphabet are refused.
+        Alphabet alphabet = Alphabet.of("zyxz");
+        result &= alphabet.size() == 3 && alphabet.rank('z') == 0 && alphabet.rank('x') == 2
+                && alphabet.rank('a') == -1 && alphabet.symbol(1) == 'y';
+        try {
+            new AlphabetNode(alphabet).setEdge('a', new Edge(0, 1));
+            result = false;
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        // The set edges only, in rank order, and not changed by later edges.
+        AlphabetNode node = new AlphabetNode(alphabet);
+        Edge x = new Edge(0, 1);
+        Edge z = new Edge(1, 2);
+        node.setEdge('x', x);
+        node.setEdge('z', z);
+        List<Edge> edges = node.getAllEdges();
+        node.setEdge('y', new Edge(2, 3));
+        result &= edges.equals(Arrays.asList(z, x)) && node.getAllEdges().size() == 3;
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    public static void testSlidingWindow(List<Boolean> results) {
+        System.out.println("Checking sliding windows against a scan of the window:");
+
+        boolean result = true;
+        Random random = new Random(19);
+        String[] alphabets = new String[] { "a", "ab", "abc", "acgt" };
+
+        for (String alphabet : alphabets) {
+            for (int window = 1; window <= 24; window += 1 + window / 4) {
+                SlidingWindowSuffixTree tree = new SlidingWindowSuffixTree(window);
+                StringBuilder stream = new StringBuilder();
+
+                for (int i = 0; i < 400; i++) {
+                    char c = alphabet.charAt(random.nextInt(alphabet.length()));
+                    tree.append(c);
+                    stream.append(c);
+
+                    String text = stream.substring(Math.max(0, stream.length() - window));
+                    result &= tree.getText().equals(text) && tree.getStart() == stream.length() - text.length();
+                    result &= tree.getNodeCount() <= 2 * window + 1;
+
+                    // Every suffix of the window, which covers its substrings, and random strings.
+                    for (int from = 0; from < text.length(); from++) {
+                        result &= tree.contains(text.substring(from));
+                    }
+                    for (int k = 0; k < 8; k++) {
+                        StringBuilder query = new StringBuilder();
+                        int length = 1 + random.nextInt(window + 1);
+                        for (int j = 0; j < length; j++) {
+                            query.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                        }
+                        result &= tree.contains(query) == text.contains(query);
+                    }
+                }
+            }
+        }
+
+        // A long stream over a large window, which compacts many times.
+        SlidingWindowSuffixTree tree = new SlidingWindowSuffixTree(1000);
+        tree.append(Benchmark.randomWords(20000, 3));
+        String text = tree.getText();
+        result &= text.length() == 1000 && tree.contains(text.substring(400, 700))
+                && !tree.contains(text + "q") && tree.getNodeCount() <= 2001;
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    public static void testMatchingStatistics(List<Boolean> results) {
+        System.out.println("Checking matching statistics against a scan of the reference:");
+
+        boolean result = true;
+        Random random = new Random(20);
+
+        for (int k = 0; k < 60; k++) {
+            String alphabet = k % 3 == 0 ? "ab" : k % 3 == 1 ? "abc" : "acgt";
+            StringBuilder reference = new StringBuilder();
+            for (int i = 0, n = 1 + random.nextInt(80); i < n; i++) {
+                reference.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            StringBuilder query = new StringBuilder();
+            for (int i = 0, n = random.nextInt(120); i < n; i++) {
+                query.append("abcgt".charAt(random.nextInt(alphabet.length() + 1)));
+            }
+            String s = k % 2 == 0 ? reference + "$" : reference.toString();
+            String q = query.toString();
+
+            Node[] roots = new Node[] { SuffixTreeBuilder.build(s, new MapNodeFactory()),
+                    MatchingStatistics.prepare(SuffixTreeBuilder.build(s, new MapNodeFactory()), s),
+                    ParallelSuffixTreeBuilder.build(s, new AdaptiveNodeFactory(), 2) };
+            for (Node root : roots) {
+                List<long[]> statistics = matchingStatistics(root, s, q);
+                result &= statistics.size() == q.length();
+
+                for (int i = 0; i < q.length() && result; i++) {
+                    int expected = 0;
+                    while (i + expected < q.length() && s.contains(q.substring(i, i + expected + 1))) {
+                        expected++;
+                    }
+
+                    long[] actual = statistics.get(i);
+                    result &= actual[0] == i && actual[1] == expected;
+                    result &= expected == 0 ? actual[2] == -1
+                            : s.startsWith(q.substring(i, i + expected), (int) actual[2]);
+                }
+            }
+        }
+
+        // Every internal node below depth 1 now links to its path without the first character.
+        String words = Benchmark.randomWords(20000, 5);
+        Node root = MatchingStatistics.prepare(SuffixTreeBuilder.build(words, new MapNodeFactory()), words);
+        for (Edge e : root.getAllEdges()) {
+            if (e != null && e.child != null) {
+                for (Edge f : e.child.getAllEdges()) {
+                    if (f != null && f.child != null) {
+                        String path = words.substring(e.start, e.end) + words.substring(f.start, f.end);
+                        Edge linked = Util.find(root, words, path.substring(1));
+                        result &= linked != null && linked.child == f.child.getSuffixLink();
+                    }
+                }
+            }
+        }
+
+        // A channel streams the same statistics, with long positions.
+        try {
+            String reference = words.substring(0, 10000);
+            String other = words.substring(5000, 20000);
+            Node tree = SuffixTreeBuilder.build(reference, new AdaptiveNodeFactory());
+
+            long[] sum = new long[2];
+            MatchingStatistics scanner = new MatchingStatistics(tree, reference,
+                    (position, length, at) -> {
+                        sum[0] += position;
+                        sum[1] += length;
+                    });
+            scanner.scan(Channels.newChannel(new ByteArrayInputStream(other.getBytes(StandardCharsets.ISO_8859_1))));
+
+            long expected = 0;
+            for (long[] statistic : matchingStatistics(tree, reference, other)) {
+                expected += statistic[1];
+            }
+            result &= scanner.getPosition() == other.length()
+                    && sum[0] == (long) other.length() * (other.length() - 1) / 2 && sum[1] == expected;
+
+            // The shared half is one long match.
+            result &= matchingStatistics(tree, reference, other).get(0)[1] == 5000;
+
+            // Scanners leave the tree's links as the builder set them.
+            Node unlinked = SuffixTreeBuilder.build(reference, new MapNodeFactory());
+            Map<Node, Node> links = new HashMap<>();
+            Deque<Node> nodes = new ArrayDeque<>();
+            nodes.push(unlinked);
+            while (!nodes.isEmpty()) {
+                Node node = nodes.pop();
+                links.put(node, node.getSuffixLink());
+                for (Edge e : node.getAllEdges()) {
+                    if (e != null && e.child != null) {
+                        nodes.push(e.child);
+                    }
+                }
+            }
+            matchingStatistics(unlinked, reference, other);
+            for (Map.Entry<Node, Node> link : links.entrySet()) {
+                result &= link.getKey().getSuffixLink() == link.getValue();
+            }
+
+            // Positions run on across finish.
+            List<Long> positions = new ArrayList<>();
+            MatchingStatistics twice = new MatchingStatistics(tree, reference,
+                    (position, length, at) -> positions.add(position));
+            twice.append("abc").finish();
+            twice.append("de").finish();
+            result &= positions.equals(Arrays.asList(0L, 1L, 2L, 3L, 4L)) && twice.getPosition() == 5;
+        } catch (IOException e) {
+            e.printStackTrace();
+            result = false;
+        }
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    private static List<long[]> matchingStatistics(Node root, CharSequence s, CharSequence query) {
+        List<long[]> statistics = new ArrayList<>();
+        try {
+            new MatchingStatistics(root, s, (position, length, at) -> statistics.add(new long[] { position, length, at }))
+                    .append(query).finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return statistics;
+    }
+
+    public static void testApproximateMatcher(List<Boolean> results) {
+        System.out.println("Checking approximate matches against a scan of the text:");
+
+        boolean result = true;
+        Random random = new Random(21);
+        ForkJoinPool pool = new ForkJoinPool(3);
+
+        for (int t = 0; t < 100; t++) {
+            String alphabet = t % 2 == 0 ? "ab" : "acgt";
+            String s = randomString(alphabet, 1 + random.nextInt(50), random) + "$";
+            String pattern = randomString(alphabet, 1 + random.nextInt(6), random);
+            int k = random.nextInt(4);
+            Node root = SuffixTreeBuilder.build(s, new MapNodeFactory());
+
+            for (ApproximateMatcher.Distance distance : ApproximateMatcher.Distance.values()) {
+                Map<Integer, Integer> expected = new LinkedHashMap<>();
+                for (int p = 0; p < s.length() - 1; p++) {
+                    int best = distance == ApproximateMatcher.Distance.HAMMING ? hamming(pattern, s, p)
+                            : editFrom(pattern, s, p);
+                    if (best <= k) {
+                        expected.put(p, best);
+                    }
+                }
+
+                for (ForkJoinPool on : new ForkJoinPool[] { null, pool }) {
+                    ApproximateMatcher.Matches matches = ApproximateMatcher.search(root, s, pattern, k, distance, on);
+                    Map<Integer, Integer> actual = new LinkedHashMap<>();
+                    for (int i = 0; i < matches.size(); i++) {
+                        actual.put(matches.positions[i], matches.distances[i]);
+                    }
+                    // Both maps are in increasing position order.
+                    result &= new ArrayList<>(actual.entrySet()).equals(new ArrayList<>(expected.entrySet()));
+                }
+            }
+        }
+
+        // Documents of a generalized tree: matches never run into or through a terminator.
+        GeneralizedSuffixTree gst = new GeneralizedSuffixTree(new MapNodeFactory());
+        gst.addDocument(1, "gattaca");
+        gst.addDocument(2, "tacgat");
+        ApproximateMatcher.Matches matches = ApproximateMatcher.search(gst, "cat", 1,
+                ApproximateMatcher.Distance.HAMMING);
+        // Only gat is within one mismatch of cat, once in each document, and the
+        // second ends on a node. Nothing runs across a terminator, as in "a\uFFFFt".
+        result &= Arrays.equals(matches.positions, new int[] { 0, 11 })
+                && Arrays.equals(matches.distances, new int[] { 1, 1 });
+        // Within one edit, against each document scanned on its own.
+        Map<Integer, Integer> expected = new LinkedHashMap<>();
+        int offset = 0;
+        for (String document : new String[] { "gattaca", "tacgat" }) {
+            for (int p = 0; p < document.length(); p++) {
+                int best = editFrom("cat", document + "$", p);
+                if (best <= 1) {
+                    expected.put(offset + p, best);
+                }
+            }
+            offset += document.length() + 1;
+        }
+        matches = ApproximateMatcher.search(gst, "cat", 1, ApproximateMatcher.Distance.EDIT, pool);
+        Map<Integer, Integer> actual = new LinkedHashMap<>();
+        for (int i = 0; i < matches.size(); i++) {
+            actual.put(matches.positions[i], matches.distances[i]);
+        }
+        result &= expected.size() > 2
+                && new ArrayList<>(actual.entrySet()).equals(new ArrayList<>(expected.entrySet()));
+
+        // Without a unique terminator every last character would pass for one.
+        boolean rejected = false;
+        try {
+            ApproximateMatcher.search(SuffixTreeBuilder.build("banana", new MapNodeFactory()), "banana", "ana", 0,
+                    ApproximateMatcher.Distance.HAMMING);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        result &= rejected;
+
+        pool.shutdown();
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    private static String randomString(String alphabet, int length, Random random) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            b.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return b.toString();
+    }
+
+    /*
+     * Mismatches of the pattern against s at p, or more than any k if it runs
+     * into the terminator.
+     */
+    private static int hamming(String pattern, String s, int p) {
+        if (p + pattern.length() > s.length() - 1) {
+            return Integer.MAX_VALUE;
+        }
+        int mismatches = 0;
+        for (int j = 0; j < pattern.length(); j++) {
+            mismatches += s.charAt(p + j) == pattern.charAt(j) ? 0 : 1;
+        }
+        return mismatches;
+    }
+
+    /*
+     * The least edit distance of the pattern to a substring of s starting at p,
+     * by the textbook table over the rest of s, terminator excluded.
+     */
+    private static int editFrom(String pattern, String s, int p) {
+        int m = pattern.length();
+        int n = s.length() - 1 - p;
+        int[][] table = new int[m + 1][n + 1];
+        for (int i = 0; i <= m; i++) {
+            table[i][0] = i;
+        }
+        for (int j = 0; j <= n; j++) {
+            table[0][j] = j;
+        }
+        for (int i = 1; i <= m; i++) {
+            for (int j = 1; j <= n; j++) {
+                int substitution = table[i - 1][j - 1] + (pattern.charAt(i - 1) == s.charAt(p + j - 1) ? 0 : 1);
+                table[i][j] = Math.min(substitution, Math.min(table[i - 1][j], table[i][j - 1]) + 1);
+            }
+        }
+
+        int best = m;
+        for (int j = 1; j <= n; j++) {
+            best = Math.min(best, table[m][j]);
+        }
+        return best;
+    }
+
+    public static void testFrozenSuffixTree(List<Boolean> results) {
+        System.out.println("Checking frozen trees, LCA and LCE against scans:");
+
+        boolean result = true;
+        Random random = new Random(22);
+
+        // Range minima across block boundaries, with many ties.
+        for (int n : new int[] { 1, 63, 64, 65, 200, 1000 }) {
+            int[] values = new int[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = random.nextInt(8);
+            }
+            RangeMinimum minimum = new RangeMinimum(values);
+            for (int k = 0; k < 2000; k++) {
+                int from = random.nextInt(n);
+                int to = from + random.nextInt(n - from);
+                int expected = from;
+                for (int i = from; i <= to; i++) {
+                    expected = values[i] < values[expected] ? i : expected;
+                }
+                result &= minimum.argMin(from, to) == expected;
+            }
+        }
+
+        for (int t = 0; t < 40; t++) {
+            String s = randomString(t % 2 == 0 ? "ab" : "acgt", 1 + random.nextInt(120), random) + "$";
+            SuffixTreeBuilder builder = new SuffixTreeBuilder(new MapNodeFactory());
+            builder.append(s);
+            FrozenSuffixTree tree = builder.freeze();
+
+            // Leaves in preorder are the suffix array.
+            int[] sa = SuffixArray.of(builder.getRoot(), s).sa;
+            int rank = 0;
+            for (int id = 0; id < tree.size(); id++) {
+                if (tree.isLeaf(id)) {
+                    result &= tree.getSuffix(id) == sa[rank++] && tree.getLeaf(sa[rank - 1]) == id;
+                }
+            }
+
+            for (int i = 0; i < s.length(); i++) {
+                for (int j = 0; j < s.length(); j++) {
+                    int expected = 0;
+                    while (i + expected < s.length() && j + expected < s.length()
+                            && s.charAt(i + expected) == s.charAt(j + expected)) {
+                        expected++;
+                    }
+                    result &= tree.lce(i, j) == expected;
+                }
+            }
+
+            for (int id = 1; id < tree.size(); id++) {
+                int parent = tree.getParent(id);
+                result &= tree.lca(id, parent) == parent && tree.lca(FrozenSuffixTree.ROOT, id) == FrozenSuffixTree.ROOT;
+                result &= tree.getEdgeEnd(id) - tree.getEdgeStart(id) == tree.getDepth(id) - tree.getDepth(parent);
+            }
+
+            for (int k = 0; k < 20; k++) {
+                int from = random.nextInt(s.length());
+                String query = s.substring(from, from + 1 + random.nextInt(s.length() - from));
+                String other = randomString("abcg", 1 + random.nextInt(8), random);
+                result &= tree.contains(query) && tree.contains(other) == s.contains(other);
+            }
+        }
+
+        try {
+            FrozenSuffixTree.freeze(SuffixTreeBuilder.build("abab", new MapNodeFactory()), "abab");
+            result = false;
+        } catch (IllegalArgumentException e) {
+            // Expected: ab is not a leaf.
+        }
+
+        // Generalized trees are rejected, saying why.
+        GeneralizedSuffixTree documents = new GeneralizedSuffixTree(new MapNodeFactory());
+        documents.addDocument(1, "abab");
+        documents.addDocument(2, "bab");
+        try {
+            FrozenSuffixTree.freeze(documents.getRoot(), documents.getText());
+            result = false;
+        } catch (IllegalArgumentException e) {
+            result &= e.getMessage().contains("generalized");
+        }
+        SuffixTreeBuilder builder = SuffixTreeBuilder.forDocuments(new MapNodeFactory());
+        builder.addDocument("abab");
+        try {
+            builder.freeze();
+            result = false;
+        } catch (IllegalStateException e) {
+            // Expected: a document builder.
+        }
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    public static void testQueryCache(List<Boolean> results) {
+        System.out.println("Checking the query cache against the tree, with eviction and threads:");
+
+        boolean result = true;
+        Random random = new Random(23);
+        String s = gene + "$";
+        Node root = SuffixTreeBuilder.build(s, new MapNodeFactory());
+        QueryCache cache = new QueryCache(root, s, 1024);
+
+        String[] patterns = new String[400];
+        for (int k = 0; k < patterns.length; k++) {
+            int start = random.nextInt(s.length() - 9);
+            String pattern = s.substring(start, start + 1 + random.nextInt(8));
+            patterns[k] = k % 4 == 0 ? pattern + "n" : pattern;
+        }
+
+        // Every answer matches the tree, whether it came from a miss or a hit.
+        for (int round = 0; round < 2; round++) {
+            for (String pattern : patterns) {
+                int[] expected = Util.locate(root, s, pattern);
+                int[] actual = cache.locate(pattern);
+                Arrays.sort(expected);
+                Arrays.sort(actual);
+                result &= Arrays.equals(expected, actual) && cache.count(pattern) == expected.length
+                        && cache.contains(pattern) == s.contains(pattern);
+            }
+        }
+        QueryCache.Stats stats = cache.stats();
+        result &= stats.hits + stats.misses == 2 * 3 * patterns.length && stats.misses >= patterns.length
+                && stats.weight <= 1024;
+
+        // Patterns hit twice are protected from a burst of patterns seen once.
+        QueryCache hot = new QueryCache(root, s, 1024);
+        String[] favourites = Arrays.copyOf(patterns, 32);
+        for (int round = 0; round < 2; round++) {
+            for (String pattern : favourites) {
+                hot.contains(pattern);
+            }
+        }
+        for (int k = 0; k < 5000; k++) {
+            hot.contains(randomString("acgt", 12, random));
+        }
+        long hitsBefore = hot.stats().hits;
+        for (String pattern : new LinkedHashSet<>(Arrays.asList(favourites))) {
+            hot.contains(pattern);
+        }
+        stats = hot.stats();
+        result &= stats.hits - hitsBefore == new LinkedHashSet<>(Arrays.asList(favourites)).size()
+                && stats.evictions > 0 && stats.weight <= 1024;
+
+        // Positions heavier than a stripe are answered but not kept.
+        QueryCache small = new QueryCache(root, s, 4 * QueryCache.STRIPES);
+        small.contains("acg");
+        int[] everyA = small.locate("a");
+        stats = small.stats();
+        result &= everyA.length == Util.count(root, s, "a") && everyA.length > 4 && stats.evictions == 0
+                && stats.weight == 2 && small.contains("acg") && small.stats().hits == 1;
+
+        // Many threads share one cache.
+        QueryCache shared = new QueryCache(root, s, 256);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            result &= pool.submit(() -> Arrays.stream(patterns).parallel()
+                    .allMatch(pattern -> shared.count(pattern) == Util.count(root, s, pattern))).get();
+        } catch (Exception e) {
+            e.printStackTrace();
+            result = false;
+        } finally {
+            pool.shutdown();
+        }
+
+        cache.clear();
+        result &= cache.stats().entries == 0 && cache.stats().weight == 0;
+
+        // A text without a unique terminator is rejected rather than miscounted.
+        try {
+            new QueryCache(SuffixTreeBuilder.build("abab", new MapNodeFactory()), "abab", 1024);
+            result = false;
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    public static void testOffHeapStore(List<Boolean> results) {
+        System.out.println("Checking off-heap arena trees against heap ones, with spilling:");
+
+        boolean result = true;
+        Random random = new Random(29);
+        String s = randomString("acgt", 60000, random) + "$";
+        ArenaTree heap = ArenaSuffixTreeBuilder.build(s);
+
+        // A budget of a few pages, against the dozens the tree needs.
+        try (OffHeapStore store = new OffHeapStore(8L * OffHeapStore.PAGE_BYTES)) {
+            ArenaTree tree = ArenaSuffixTreeBuilder.build(s, store);
+
+            result &= tree.size() == heap.size() && store.getResidentBytes() == store.getBudget()
+                    && store.getSpilledBytes() > 0;
+            for (int id = 0; id < heap.size(); id++) {
+                result &= tree.getStart(id) == heap.getStart(id)
+                        && tree.getEnd(id, s.length()) == heap.getEnd(id, s.length())
+                        && tree.getFirstChild(id) == heap.getFirstChild(id)
+                        && tree.getNextSibling(id) == heap.getNextSibling(id)
+                        && tree.getSuffixLink(id) == heap.getSuffixLink(id);
+            }
+            for (int q = 0; q < 200; q++) {
+                int start = random.nextInt(s.length() - 20);
+                String query = s.substring(start, start + 1 + random.nextInt(20));
+                result &= Arrays.equals(tree.locate(s, query), heap.locate(s, query));
+            }
+            result &= tree.countNodes() == heap.countNodes();
+        } catch (Exception e) {
+            e.printStackTrace();
+            result = false;
+        }
+
+        // A budget up to the direct memory limit is taken, and one above it rejected.
+        try {
+            long limit = OffHeapStore.maxDirectMemory() / OffHeapStore.PAGE_BYTES * OffHeapStore.PAGE_BYTES;
+            try (OffHeapStore store = new OffHeapStore(limit)) {
+                ArenaTree tree = ArenaSuffixTreeBuilder.build(s, store);
+                result &= tree.countNodes() == heap.countNodes() && store.getSpilledBytes() == 0;
+            }
+
+            boolean rejected = false;
+            try {
+                new OffHeapStore(limit + OffHeapStore.PAGE_BYTES).close();
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            result &= rejected;
+        } catch (Exception e) {
+            e.printStackTrace();
+            result = false;
+        }
+
+        // A named spill file, and a budget under one page.
+        try {
+            Path path = Files.createTempFile("ukkonen", ".spill");
+            try (OffHeapStore store = new OffHeapStore(OffHeapStore.PAGE_BYTES, path)) {
+                String t = gene + "$";
+                StringBuilder expected = new StringBuilder();
+                ArenaSuffixTreeBuilder.build(t).suffixes(ArenaTree.ROOT, "", t, expected);
+                StringBuilder actual = new StringBuilder();
+                ArenaSuffixTreeBuilder.build(t, store).suffixes(ArenaTree.ROOT, "", t, actual);
+                result &= expected.toString().equals(actual.toString()) && Files.size(path) > 0;
+            }
+            result &= Files.exists(path);
+            Files.delete(path);
+
+            boolean rejected = false;
+            try {
+                new OffHeapStore(OffHeapStore.PAGE_BYTES - 1).close();
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            result &= rejected;
+        } catch (Exception e) {
+            e.printStackTrace();
+            result = false;
+        }
+
+        System.out.println(result);
+
+        results.add(result);
+    }
+
+    public static void testRepeats(List<Boolean> results) {
+        System.out.println("Checking maximal, supermaximal and tandem repeats against brute force:");
+
+        boolean result = true;
+        Random random = new Random(31);
+        String[] inputs = { "mississippi$", "abcabcabc$", "aaaaaaaa$", randomString("ab", 120, random) + "$",
+                randomString("acgt", 200, random) + "$" };
+
+        for (String s : inputs) {
+            try {
+                Node root = SuffixTreeBuilder.build(s, new MapNodeFactory());
+                Repeats repeats = new Repeats(FrozenSuffixTree.freeze(root, s));
+                Set<String> maximal = new HashSet<>();
+                Set<String> filtered = new HashSet<>();
+                Set<String> supermaximal = new HashSet<>();
+                Set<String> tandem = new HashSet<>();
+                repeats.maximal(1, 2, repeatsInto(maximal));
+                repeats.maximal(3, 3, repeatsInto(filtered));
+                repeats.supermaximal(1, 2, repeatsInto(supermaximal));
+                repeats.tandem(1, 1, (positions, from, length, count) -> {
+                    for (int k = from; k < from + count; k++) {
+                        tandem.add(positions[k] + ":" + length);
+                    }
+                });
+
+                // Every repeated substring with its occurrences, then the maximal ones.
+                Map<String, List<Integer>> occurrences = new HashMap<>();
+                for (int i = 0; i < s.length() - 1; i++) {
+                    for (int j = i + 1; j < s.length(); j++) {
+                        occurrences.computeIfAbsent(s.substring(i, j), w -> new ArrayList<>()).add(i);
+                    }
+                }
+                Map<String, List<Integer>> expected = new HashMap<>();
+                for (Map.Entry<String, List<Integer>> entry : occurrences.entrySet()) {
+                    String w = entry.getKey();
+                    List<Integer> at = entry.getValue();
+                    Set<Character> before = new HashSet<>();
+                    Set<Character> after = new HashSet<>();
+                    for (int p : at) {
+                        before.add(p == 0 ? '\0' : s.charAt(p - 1));
+                        after.add(s.charAt(p + w.length()));
+                    }
+                    if (at.size() >= 2 && (at.get(0) == 0 || before.size() > 1) && after.size() > 1) {
+                        expected.put(w, at);
+                    }
+                }
+
+                Set<String> expectedMaximal = new HashSet<>();
+                Set<String> expectedFiltered = new HashSet<>();
+                Set<String> expectedSupermaximal = new HashSet<>();
+                for (Map.Entry<String, List<Integer>> entry : expected.entrySet()) {
+                    String w = entry.getKey();
+                    String key = w.length() + ":" + entry.getValue();
+                    expectedMaximal.add(key);
+                    if (w.length() >= 3 && entry.getValue().size() >= 3) {
+                        expectedFiltered.add(key);
+                    }
+                    if (expected.keySet().stream().noneMatch(other -> !other.equals(w) && other.contains(w))) {
+                        expectedSupermaximal.add(key);
+                    }
+                }
+
+                Set<String> expectedTandem = new HashSet<>();
+                for (int i = 0; i < s.length(); i++) {
+                    for (int half = 1; i + 2 * half < s.length(); half++) {
+                        if (s.regionMatches(i, s, i + half, half) && s.charAt(i) != s.charAt(i + 2 * half)) {
+                            expectedTandem.add(i + ":" + 2 * half);
+                        }
+                    }
+                }
+
+                boolean passed = maximal.equals(expectedMaximal) && filtered.equals(expectedFiltered)
+                        && supermaximal.equals(expectedSupermaximal) && tandem.equals(expectedTandem);
+                System.out.println(passed);
+                result &= passed;
+            } catch (Exception e) {
+                e.printStackTrace();
+                result = false;
+            }
+        }
+
+        results.add(result);
+    }
+
+    /*
+     * Collects repeats as their length and sorted positions.
+     */
+    private static Repeats.Listener repeatsInto(Set<String> repeats) {
+        return (positions, from, length, count) -> {
+            int[] at = Arrays.copyOfRange(positions, from, from + count);
+            Arrays.sort(at);
+            repeats.add(length + ":" + Arrays.toString(at));
+        };
+    }
+
+    /*
+     * Sibling order differs between node types, so compare traversals line by line.
+     */
+    private static List<String> sorted(String suffixes) {
+        List<String> lines = Arrays.asList(suffixes.split("\n"));
+        Collections.sort(lines);
+        return lines;
+    }
 }
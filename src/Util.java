@@ -1,38 +1,297 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Queue;
 
 public class Util {
 
-    public static boolean contains(Node tree, String s, String query) {
-        int i = 0;
+    /*
+     * Is query a substring of the indexed text s?
+     *
+     * Descends by getEdge and compares characters in place against s, so a lookup
+     * takes O(query length) and allocates nothing.
+     */
+    public static boolean contains(Node tree, CharSequence s, CharSequence query) {
+        return query.length() == 0 || find(tree, s, query) != null;
+    }
+
+    public static boolean contains(Node tree, CharSequence s, char[] query) {
+        return query.length == 0 || find(tree, s, query) != null;
+    }
+
+    /*
+     * Finds the edge on which a non-empty query ends, or null if it is absent.
+     *
+     * Every occurrence of the query sits below this edge: at its leaf, or at the
+     * leaves under its child.
+     */
+    public static Edge find(Node tree, CharSequence s, CharSequence query) {
         Node current = tree;
-    
+        Edge e = null;
+        int i = 0;
+
         while (i < query.length()) {
+            /*
+             * The query runs past the end of a leaf.
+             */
             if (current == null) {
-                return false;
+                return null;
             }
-            Node temp = current;
-            for (Edge e : temp.getAllEdges()) {
-    
-                current = null;
-                int d = e.end.end - e.start;
-                int remaining = query.length() - i;
-    
-                if (d <= remaining &&
-                        s
-                        .substring(e.start, e.end.end)
-                        .equals(query.substring(i, i + (e.end.end - e.start)))) 
-                {
-                    current = e.child;
-                    i += e.end.end - e.start;
-                    break;
+
+            e = current.getEdge(query.charAt(i));
+            if (e == null) {
+                return null;
+            }
+
+            /*
+             * The first character matched the edge key.
+             */
+            int end = e.getEnd(s.length());
+            int j = e.start + 1;
+            i++;
+
+            while (i < query.length() && j < end) {
+                if (s.charAt(j) != query.charAt(i)) {
+                    return null;
+                }
+                i++;
+                j++;
+            }
+
+            current = e.child;
+        }
+
+        return e;
+    }
+
+    public static Edge find(Node tree, CharSequence s, char[] query) {
+        Node current = tree;
+        Edge e = null;
+        int i = 0;
+
+        while (i < query.length) {
+            if (current == null) {
+                return null;
+            }
+
+            e = current.getEdge(query[i]);
+            if (e == null) {
+                return null;
+            }
+
+            int end = e.getEnd(s.length());
+            int j = e.start + 1;
+            i++;
+
+            while (i < query.length && j < end) {
+                if (s.charAt(j) != query[i]) {
+                    return null;
                 }
+                i++;
+                j++;
+            }
+
+            current = e.child;
+        }
+
+        return e;
+    }
+
+    /*
+     * Does s end with a character that occurs nowhere else in it, so that every
+     * suffix has its own leaf?
+     */
+    static boolean isTerminated(CharSequence s) {
+        if (s.length() == 0) {
+            return false;
+        }
+
+        char last = s.charAt(s.length() - 1);
+        for (int i = 0; i < s.length() - 1; i++) {
+            if (s.charAt(i) == last) {
+                return false;
             }
         }
-        // System.out.println(i);
         return true;
     }
 
+    /*
+     * Stores the suffix index and leaf count on every edge (see Edge).
+     *
+     * The text must end with a unique terminator, e.g. '$', so that every suffix
+     * has its own leaf. Uses an explicit stack, so deep trees are fine.
+     */
+    public static void annotate(Node tree, CharSequence s) {
+        Edge[] stack = new Edge[64];
+        int[] depths = new int[64];
+        boolean[] expanded = new boolean[64];
+        int size = 0;
+
+        for (Edge e : tree.getAllEdges()) {
+            if (e != null) {
+                stack[size] = e;
+                depths[size] = 0;
+                expanded[size] = false;
+                size++;
+            }
+        }
+
+        while (size > 0) {
+            int top = size - 1;
+            Edge e = stack[top];
+            int depth = depths[top];
+
+            /*
+             * A leaf represents the suffix that starts depth characters before it.
+             */
+            if (e.child == null) {
+                e.suffix = e.start - depth;
+                e.leaves = 1;
+                size--;
+                continue;
+            }
+
+            /*
+             * An internal edge is summed up after all of its children.
+             */
+            if (expanded[top]) {
+                e.suffix = Integer.MAX_VALUE;
+                e.leaves = 0;
+                for (Edge child : e.child.getAllEdges()) {
+                    if (child != null) {
+                        e.suffix = Math.min(e.suffix, child.suffix);
+                        e.leaves += child.leaves;
+                    }
+                }
+                size--;
+                continue;
+            }
+
+            expanded[top] = true;
+            int childDepth = depth + e.getEnd(s.length()) - e.start;
+
+            for (Edge child : e.child.getAllEdges()) {
+                if (child == null) {
+                    continue;
+                }
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                    depths = Arrays.copyOf(depths, size * 2);
+                    expanded = Arrays.copyOf(expanded, size * 2);
+                }
+                stack[size] = child;
+                depths[size] = childDepth;
+                expanded[size] = false;
+                size++;
+            }
+        }
+    }
+
+    /*
+     * Points every internal node at the node for its path without the first
+     * character. The builders leave most links at the root, which is only right
+     * for nodes one character deep.
+     *
+     * Goes breadth first, so the link of a node's parent is already set. The link
+     * is then found by skip/count from there, over the node's own edge label,
+     * which is linear in the text for a fixed alphabet. A node whose link would
+     * not land on a node keeps the root, and its children start from the root.
+     *
+     * Run it on a finished tree, since it overwrites the links the builder uses.
+     */
+    public static void linkSuffixes(Node tree, CharSequence s) {
+        Queue<Node> nodes = new ArrayDeque<>();
+        Queue<Integer> depths = new ArrayDeque<>();
+        nodes.add(tree);
+        depths.add(0);
+
+        while (!nodes.isEmpty()) {
+            Node parent = nodes.remove();
+            int parentDepth = depths.remove();
+            Node parentLink = parent.getSuffixLink();
+            boolean linked = parentDepth == 1 || parentLink != null && !parentLink.getIsRoot();
+
+            for (Edge e : parent.getAllEdges()) {
+                if (e == null || e.child == null) {
+                    continue;
+                }
+                int depth = parentDepth + e.end - e.start;
+
+                /*
+                 * Walk down the path without its first character, from the link of
+                 * the parent when it has one.
+                 */
+                Node node = tree;
+                int from = e.end - depth + 1;
+                if (parentDepth > 0 && linked) {
+                    node = parentLink;
+                    from = e.start;
+                }
+                while (node != null && from < e.end) {
+                    Edge next = node.getEdge(s.charAt(from));
+                    node = next == null ? null : next.child;
+                    from += next == null ? 0 : next.getEnd(s.length()) - next.start;
+                }
+
+                e.child.setSuffixLink(node != null && from == e.end ? node : tree);
+                nodes.add(e.child);
+                depths.add(depth);
+            }
+        }
+    }
+
+    /*
+     * The number of occurrences of a non-empty query, in O(query length).
+     * The tree must have been annotated.
+     */
+    public static int count(Node tree, CharSequence s, CharSequence query) {
+        Edge e = query.length() == 0 ? null : find(tree, s, query);
+        return e == null ? 0 : e.leaves;
+    }
+
+    /*
+     * The start index of every occurrence of a non-empty query, in tree order
+     * (not sorted). Takes O(query length + occurrences). The tree must have been
+     * annotated.
+     */
+    public static int[] locate(Node tree, CharSequence s, CharSequence query) {
+        Edge e = query.length() == 0 ? null : find(tree, s, query);
+        return e == null ? new int[0] : leavesBelow(e);
+    }
+
+    /*
+     * The suffixes of the leaves at or below an annotated edge, breadth first.
+     */
+    static int[] leavesBelow(Edge e) {
+        int[] positions = new int[e.leaves];
+        int found = 0;
+
+        if (e.child == null) {
+            positions[found++] = e.suffix;
+            return positions;
+        }
+
+        Queue<Node> q = new ArrayDeque<>();
+        q.add(e.child);
+
+        while (!q.isEmpty()) {
+            for (Edge child : q.poll().getAllEdges()) {
+                if (child == null) {
+                    continue;
+                }
+                if (child.child == null) {
+                    positions[found++] = child.suffix;
+                } else {
+                    q.add(child.child);
+                }
+            }
+        }
+
+        return positions;
+    }
+
     public static int countNodes(Node root) {
         int count = 1;
         Node current = root;
@@ -42,7 +301,7 @@ public class Util {
         while (current != null) {
     
             for (Edge e : current.getAllEdges()) {
-                if (e.child != null) {
+                if (e != null && e.child != null) {
                     q.add(e.child);
                     count++;
                 }
@@ -55,11 +314,13 @@ public class Util {
     }
 
     /*
-     * Traverses the suffix tree.
+     * Traverses the suffix tree, appending a line per leaf: path, then each edge
+     * label on the way down preceded by "/". Built on SuffixWalker, which can
+     * stream the same lines to a Writer instead.
      */
     // The String 's' must match the suffix tree, there is no test for this
     // currently...
-    public static void suffixes(Node tree, String path, String s, StringBuilder builder, boolean verbose) {
+    public static void suffixes(Node tree, String path, CharSequence s, StringBuilder builder, boolean verbose) {
         if (tree == null) {
             if (verbose) {
                 System.out.println(path);
@@ -67,21 +328,21 @@ public class Util {
             builder.append(path + "\n");
             return;
         }
-    
-        for (Edge e : tree.getAllEdges()) {
-            if (e == null) {
-                continue;
-            }
-    
-            try 
-            {
-                suffixes(e.child, path + "/" + s.substring(e.start, e.end.end), s, builder, verbose);
-            } catch (Exception err)
-            {
-                System.out.println("Error in traversing");
-                throw err;
-            }
+
+        try {
+            SuffixWalker.walk(tree, s, (suffix, starts, ends, edges) -> {
+                int line = builder.length();
+                builder.append(path);
+                for (int k = 0; k < edges; k++) {
+                    builder.append('/').append(s, starts[k], ends[k]);
+                }
+                if (verbose) {
+                    System.out.println(builder.substring(line));
+                }
+                builder.append('\n');
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
-    
 }